@@ -0,0 +1,45 @@
+# Extracts the iata_code column of the OurAirports airports.csv export, one code per line.
+# The export quotes text fields (names contain commas), so fields are split by hand;
+# the column is found by its header name.
+#
+# Usage: awk -f scripts/iata-codes.awk airports.csv | sort -u > iata-codes.txt
+
+function split_csv(line,   i, c, n, field, quoted) {
+    n = 0
+    field = ""
+    quoted = 0
+    for (i = 1; i <= length(line); i++) {
+        c = substr(line, i, 1)
+        if (quoted) {
+            if (c == "\"") {
+                if (substr(line, i + 1, 1) == "\"") { field = field c; i++ }
+                else quoted = 0
+            } else {
+                field = field c
+            }
+        } else if (c == "\"") {
+            quoted = 1
+        } else if (c == ",") {
+            cols[++n] = field
+            field = ""
+        } else {
+            field = field c
+        }
+    }
+    cols[++n] = field
+    return n
+}
+
+{ sub(/\r$/, "") }
+
+NR == 1 {
+    n = split_csv($0)
+    for (i = 1; i <= n; i++) if (cols[i] == "iata_code") col = i
+    if (!col) { print "iata_code column not found" > "/dev/stderr"; exit 1 }
+    next
+}
+
+{
+    split_csv($0)
+    if (cols[col] ~ /^[A-Z][A-Z][A-Z]$/) print cols[col]
+}
@@ -0,0 +1,64 @@
+#!/usr/bin/env sh
+# Startup-time benchmark: time-to-ready before/after the fast-startup mode.
+#
+#   baseline : fat jar, no AOT, no CDS, Hibernate ddl-auto=update, Flyway off
+#   fast     : extracted jar, AOT context, AppCDS archive, Flyway + ddl-auto=validate
+#
+# Needs a reachable Postgres/Redis (same env vars / profile as a normal run, including
+# IATA_CODES_LOCATION for app.iata.strict) and a jar built with:
+#   ./mvnw -Pfast-startup -DskipTests package
+# Prints per-run times, the average per mode and the before/after comparison to report.
+#
+# Usage: scripts/startup-benchmark.sh [runs] [profile]
+set -eu
+
+RUNS="${1:-5}"
+PROFILE="${2:-prod}"
+JAR="target/tanvan.jar"
+WORK="target/startup-benchmark"
+JAVA_OPTS="${JAVA_OPTS:--Xmx512m -Xms256m -XX:+UseG1GC}"
+
+[ -f "$JAR" ] || { echo "Missing $JAR, build with -Pfast-startup first"; exit 1; }
+
+rm -rf "$WORK" && mkdir -p "$WORK"
+java -Djarmode=tools -jar "$JAR" extract --destination "$WORK/app" >/dev/null
+
+echo "Training CDS archive..."
+java $JAVA_OPTS -XX:ArchiveClassesAtExit="$WORK/app/app.jsa" \
+    -Dspring.aot.enabled=true -Dspring.context.exit=onRefresh -Dspring.profiles.active="$PROFILE" \
+    -jar "$WORK/app/tanvan.jar" --app.cache.snapshot.enabled=false >"$WORK/training.log" 2>&1 || true
+
+# "Started EcommerceApplication in 4.321 seconds (process running for 4.9)" → process running time
+ready_seconds() {
+    sed -n 's/.*Started EcommerceApplication in .*(process running for \([0-9.]*\)).*/\1/p' "$1" | head -n 1
+}
+
+run() {
+    mode="$1"; shift
+    total=0
+    i=1
+    while [ "$i" -le "$RUNS" ]; do
+        log="$WORK/$mode-$i.log"
+        java $JAVA_OPTS -Dspring.profiles.active="$PROFILE" -Dspring.context.exit=onRefresh "$@" \
+            >"$log" 2>&1 || true
+        t="$(ready_seconds "$log")"
+        [ -n "$t" ] || { echo "$mode run $i did not start, see $log"; exit 1; }
+        echo "$mode run $i: ${t}s"
+        total="$(awk -v a="$total" -v b="$t" 'BEGIN { print a + b }')"
+        i=$((i + 1))
+    done
+    average="$(awk -v a="$total" -v n="$RUNS" 'BEGIN { printf "%.3f", a / n }')"
+    echo "$mode average: ${average}s"
+}
+
+run baseline -jar "$JAR" \
+    --spring.flyway.enabled=false --spring.jpa.hibernate.ddl-auto=update --app.cache.snapshot.enabled=false
+baseline_average="$average"
+
+run fast -XX:SharedArchiveFile="$WORK/app/app.jsa" -Dspring.aot.enabled=true -jar "$WORK/app/tanvan.jar" \
+    --app.cache.snapshot.enabled=false
+fast_average="$average"
+
+echo
+echo "Startup ($RUNS runs, profile $PROFILE): baseline ${baseline_average}s -> fast ${fast_average}s" \
+    "($(awk -v b="$baseline_average" -v f="$fast_average" 'BEGIN { printf "%.1f", 100 * (b - f) / b }')% faster)"
@@ -3,35 +3,18 @@ package com.tanvan.ecommerce.config;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.client.RestTemplate;
 
-import java.util.concurrent.Executor;
-
 /**
- * Configuration for async background tasks and HTTP client
+ * Configuration for async/scheduled tasks and HTTP client.
+ * Cache refreshes run on RefreshScheduler, not on a shared executor.
  */
 @Configuration
 @EnableAsync
+@EnableScheduling
 public class AsyncConfig {
 
-    /**
-     * Configure custom thread pool executor for @Async methods
-     * Prevents thread exhaustion with bounded queue
-     */
-    @Bean(name = "taskExecutor")
-    public Executor taskExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(5);           // Core threads
-        executor.setMaxPoolSize(10);           // Max threads
-        executor.setQueueCapacity(20);         // Queue size
-        executor.setThreadNamePrefix("async-flight-");
-        executor.setAwaitTerminationSeconds(60);
-        executor.setWaitForTasksToCompleteOnShutdown(true);
-        executor.initialize();
-        return executor;
-    }
-
     /**
      * RestTemplate bean for HTTP calls
      */
@@ -0,0 +1,38 @@
+package com.tanvan.ecommerce.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bulk refresh of named airport groups (app.bulk-refresh.*).
+ *
+ * app.bulk-refresh.groups.vn=SGN,HAN,DAD,...
+ * Upstream (AirLabs) and DB work run on separate pools so a slow side cannot
+ * starve the other; DB sync is done per batch of airports.
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "app.bulk-refresh")
+public class BulkRefreshProperties {
+
+    // Số request AirLabs song song (mỗi airport = 2 request: departures + arrivals)
+    private int upstreamParallelism = 32;
+
+    // Số batch ghi DB song song, nên nhỏ hơn pool Hikari
+    private int dbParallelism = 4;
+
+    // Số airport gộp chung một lần diff/ghi DB
+    private int batchSize = 10;
+
+    // Số job giữ lại để xem tiến độ
+    private int maxJobs = 20;
+
+    private Map<String, List<String>> groups = new LinkedHashMap<>();
+}
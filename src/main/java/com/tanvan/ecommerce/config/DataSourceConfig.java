@@ -0,0 +1,124 @@
+package com.tanvan.ecommerce.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Primary/replica routing for Postgres.
+ * Routing is set up when app.datasource.replica.urls is set, otherwise a single primary pool
+ * is returned. Decided here at runtime rather than with a bean condition, which the AOT image
+ * (-Pfast-startup) would evaluate once at build time.
+ *
+ * Connections are fetched lazily: read-only transactions (@Transactional(readOnly = true))
+ * mark the connection read-only before the first statement, so they are served by a replica pool.
+ * Everything else (syncFlights writes) stays on the primary pool.
+ */
+@Slf4j
+@Configuration
+public class DataSourceConfig {
+
+    @Value("${spring.datasource.url}")
+    private String primaryUrl;
+
+    @Value("${spring.datasource.username}")
+    private String username;
+
+    @Value("${spring.datasource.password}")
+    private String password;
+
+    @Value("${spring.datasource.driver-class-name:org.postgresql.Driver}")
+    private String driverClassName;
+
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+    private int maximumPoolSize;
+
+    @Value("${spring.datasource.hikari.minimum-idle:5}")
+    private int minimumIdle;
+
+    @Value("${spring.datasource.hikari.idle-timeout:30000}")
+    private long idleTimeout;
+
+    @Value("${spring.datasource.hikari.max-lifetime:600000}")
+    private long maxLifetime;
+
+    @Value("${spring.datasource.hikari.connection-timeout:30000}")
+    private long connectionTimeout;
+
+    @Value("${app.datasource.replica.urls:}")
+    private List<String> replicaUrls;
+
+    @Value("${app.datasource.replica.username:${spring.datasource.username}}")
+    private String replicaUsername;
+
+    @Value("${app.datasource.replica.password:${spring.datasource.password}}")
+    private String replicaPassword;
+
+    @Value("${app.datasource.replica.maximum-pool-size:10}")
+    private int replicaMaximumPoolSize;
+
+    @Value("${app.datasource.replica.minimum-idle:2}")
+    private int replicaMinimumIdle;
+
+    private final List<HikariDataSource> pools = new ArrayList<>();
+
+    @Bean
+    @Primary
+    public DataSource dataSource() {
+        HikariDataSource primary = pool("primary", primaryUrl, username, password, maximumPoolSize, minimumIdle);
+        if (replicaUrls.isEmpty()) {
+            log.info("🐘 Configuring Postgres: single primary pool, no replicas");
+            return primary;
+        }
+        log.info("🐘 Configuring Postgres routing: primary + {} replica(s)", replicaUrls.size());
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(ReplicaRoutingDataSource.PRIMARY, primary);
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            targets.put(ReplicaRoutingDataSource.REPLICA_PREFIX + i,
+                    pool("replica-" + i, replicaUrls.get(i), replicaUsername, replicaPassword,
+                            replicaMaximumPoolSize, replicaMinimumIdle));
+        }
+
+        ReplicaRoutingDataSource readOnly = new ReplicaRoutingDataSource(replicaUrls.size());
+        readOnly.setTargetDataSources(targets);
+        readOnly.setDefaultTargetDataSource(primary);
+        readOnly.afterPropertiesSet();
+
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primary);
+        dataSource.setReadOnlyDataSource(readOnly);
+        return dataSource;
+    }
+
+    @PreDestroy
+    public void closePools() {
+        pools.forEach(HikariDataSource::close);
+    }
+
+    private HikariDataSource pool(String name, String url, String user, String pass, int maxSize, int minIdle) {
+        HikariDataSource ds = new HikariDataSource();
+        ds.setPoolName("hikari-" + name);
+        ds.setDriverClassName(driverClassName);
+        ds.setJdbcUrl(url);
+        ds.setUsername(user);
+        ds.setPassword(pass);
+        ds.setMaximumPoolSize(maxSize);
+        ds.setMinimumIdle(minIdle);
+        ds.setIdleTimeout(idleTimeout);
+        ds.setMaxLifetime(maxLifetime);
+        ds.setConnectionTimeout(connectionTimeout);
+        pools.add(ds);
+        return ds;
+    }
+}
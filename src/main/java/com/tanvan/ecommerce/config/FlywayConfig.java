@@ -0,0 +1,31 @@
+package com.tanvan.ecommerce.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.flyway.autoconfigure.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Schema is owned by Flyway (db/migration), Hibernate only validates it.
+ *
+ * app.flyway.skip-migrate lets the AppCDS training run in the Docker build start the
+ * context without a database. A runtime property is needed because with AOT the
+ * Flyway auto-configuration conditions are fixed at build time.
+ */
+@Slf4j
+@Configuration
+public class FlywayConfig {
+
+    @Bean
+    public FlywayMigrationStrategy flywayMigrationStrategy(
+            @Value("${app.flyway.skip-migrate:false}") boolean skipMigrate) {
+        return flyway -> {
+            if (skipMigrate) {
+                log.info("⏭️ Flyway migrate skipped (app.flyway.skip-migrate=true)");
+                return;
+            }
+            flyway.migrate();
+        };
+    }
+}
@@ -0,0 +1,60 @@
+package com.tanvan.ecommerce.config;
+
+import com.tanvan.ecommerce.utils.AdaptiveConcurrencyLimiter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Adaptive concurrency limits for the slow paths.
+ *
+ * - missPathLimiter: request threads that have to load an airport (AirLabs sync or DB read).
+ *   Cache hits never take a permit.
+ * - dbSyncLimiter: the DB part of syncFlights (applySync), shared by request and background refreshes.
+ *
+ * Limits are exported as flights.limiter.limit / flights.limiter.inflight{name=...}.
+ */
+@Configuration
+public class LimiterConfig {
+
+    @Value("${app.limiter.tolerance:2.0}")
+    private double tolerance;
+
+    @Value("${app.limiter.backoff-ratio:0.9}")
+    private double backoffRatio;
+
+    @Value("${app.limiter.min-rtt-window:500}")
+    private int minRttWindow;
+
+    @Bean
+    public AdaptiveConcurrencyLimiter missPathLimiter(
+            MeterRegistry registry,
+            @Value("${app.limiter.miss.initial:10}") int initial,
+            @Value("${app.limiter.miss.min:2}") int min,
+            @Value("${app.limiter.miss.max:50}") int max) {
+        return register(registry, new AdaptiveConcurrencyLimiter(
+                "miss-path", initial, min, max, tolerance, backoffRatio, minRttWindow));
+    }
+
+    @Bean
+    public AdaptiveConcurrencyLimiter dbSyncLimiter(
+            MeterRegistry registry,
+            @Value("${app.limiter.db.initial:8}") int initial,
+            @Value("${app.limiter.db.min:2}") int min,
+            @Value("${app.limiter.db.max:10}") int max) {
+        return register(registry, new AdaptiveConcurrencyLimiter(
+                "db-sync", initial, min, max, tolerance, backoffRatio, minRttWindow));
+    }
+
+    private AdaptiveConcurrencyLimiter register(MeterRegistry registry, AdaptiveConcurrencyLimiter limiter) {
+        Gauge.builder("flights.limiter.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .tag("name", limiter.getName())
+                .register(registry);
+        Gauge.builder("flights.limiter.inflight", limiter, AdaptiveConcurrencyLimiter::getInflight)
+                .tag("name", limiter.getName())
+                .register(registry);
+        return limiter;
+    }
+}
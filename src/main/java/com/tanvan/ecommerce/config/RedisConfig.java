@@ -4,26 +4,44 @@ import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
 import io.lettuce.core.ClientOptions;
+import io.lettuce.core.ReadFrom;
 import io.lettuce.core.SocketOptions;
 import io.lettuce.core.SslOptions;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
-import org.springframework.data.redis.connection.RedisConnectionFactory;
-import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
-import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.*;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.*;
 
 import java.time.Duration;
-
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Redis connection setup.
+ *
+ * app.redis.topology selects the deployment:
+ *  - standalone     : single node (Redis Cloud with SSL or local)
+ *  - master-replica : static primary + replicas (app.redis.replica.nodes)
+ *  - sentinel       : spring.data.redis.sentinel.master / nodes
+ *  - cluster        : spring.data.redis.cluster.nodes
+ *
+ * Writes and locks always use the primary factory. Cache reads go through
+ * redisReadTemplate, which prefers replicas when the topology has any.
+ */
 @Slf4j
 @Configuration
 @EnableCaching
@@ -44,125 +62,152 @@ public class RedisConfig {
     @Value("${spring.data.redis.ssl.enabled:false}")
     private boolean sslEnabled;
 
+    @Value("${app.redis.topology:standalone}")
+    private String topology;
+
+    @Value("${app.redis.replica.nodes:}")
+    private List<String> replicaNodes;
+
+    @Value("${spring.data.redis.sentinel.master:}")
+    private String sentinelMaster;
+
+    @Value("${spring.data.redis.sentinel.nodes:}")
+    private List<String> sentinelNodes;
+
+    @Value("${spring.data.redis.cluster.nodes:}")
+    private List<String> clusterNodes;
+
+    @Value("${spring.data.redis.cluster.max-redirects:3}")
+    private int clusterMaxRedirects;
+
+    @Value("${app.redis.cluster.topology-refresh-seconds:30}")
+    private int topologyRefreshSeconds;
+
+    @Value("${spring.data.redis.lettuce.pool.max-active:16}")
+    private int poolMaxActive;
+
+    @Value("${spring.data.redis.lettuce.pool.max-idle:8}")
+    private int poolMaxIdle;
+
+    @Value("${spring.data.redis.lettuce.pool.min-idle:2}")
+    private int poolMinIdle;
+
+    @Value("${spring.data.redis.lettuce.pool.max-wait:2000ms}")
+    private Duration poolMaxWait;
+
+    // Factory đọc từ replica, không phải bean: chỉ tạo khi topology có replica
+    private LettuceConnectionFactory readConnectionFactory;
+
     /**
-     * Connection Factory for Production (Redis Cloud with SSL)
-     * Only active when spring.data.redis.ssl.enabled=true
+     * Primary connection factory: writes, locks, generation counter
      */
     @Bean
     @Primary
-    @ConditionalOnProperty(name = "spring.data.redis.ssl.enabled", havingValue = "true")
-    public RedisConnectionFactory redisCloudConnectionFactory() {
-        log.info("🔴 Configuring Redis Cloud connection (SSL enabled)...");
-        log.info("Host: {}, Port: {}, Username: {}", redisHost, redisPort, redisUsername);
-
-        // Redis standalone configuration
-        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration();
-        config.setHostName(redisHost);
-        config.setPort(redisPort);
-        config.setUsername(redisUsername);
-
-        if (redisPassword != null && !redisPassword.isEmpty()) {
-            config.setPassword(redisPassword);
-        }
+    public RedisConnectionFactory redisConnectionFactory() {
+        log.info("🔴 Configuring Redis connection (topology: {}, SSL: {})...", topology, sslEnabled);
+        log.info("Host: {}, Port: {}", redisHost, redisPort);
 
-        // Client options with SSL
-        ClientOptions clientOptions = ClientOptions.builder()
-                .socketOptions(
-                        SocketOptions.builder()
-                                .connectTimeout(Duration.ofSeconds(10))
-                                .keepAlive(true)
-                                .build()
-                )
-                .sslOptions(SslOptions.builder().build())
-                .build();
+        // Standalone: không set ReadFrom, giữ đường connect mặc định của Lettuce
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(
+                topologyConfiguration(), clientConfiguration("standalone".equals(topology) ? null : ReadFrom.UPSTREAM));
 
-        // Lettuce client configuration with SSL
-        LettuceClientConfiguration clientConfig = LettuceClientConfiguration.builder()
-                .commandTimeout(Duration.ofSeconds(5))
-                .clientOptions(clientOptions)
-                .useSsl()
-                .disablePeerVerification()  // For Redis Cloud
-                .build();
+        log.info("✅ Redis connection factory created successfully");
+        return factory;
+    }
+
+    @Bean
+    @Primary
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory) {
+        log.info("🔴 Configuring RedisTemplate...");
+        RedisTemplate<String, Object> template = buildTemplate(connectionFactory);
+        log.info("✅ RedisTemplate configured successfully");
+        return template;
+    }
 
-        LettuceConnectionFactory factory = new LettuceConnectionFactory(config, clientConfig);
-        factory.setValidateConnection(true);
+    /**
+     * Template for cache reads, routed to replicas when the topology has them.
+     * The topology is checked here at runtime, not with a bean condition: the AOT image
+     * (-Pfast-startup) evaluates conditions at build time and would ignore REDIS_TOPOLOGY.
+     * Standalone reads share the primary factory.
+     */
+    @Bean
+    public RedisTemplate<String, Object> redisReadTemplate(RedisConnectionFactory connectionFactory) {
+        if ("standalone".equals(topology)) {
+            return buildTemplate(connectionFactory);
+        }
+        log.info("🔴 Configuring Redis read connection (REPLICA_PREFERRED)...");
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(
+                topologyConfiguration(), clientConfiguration(ReadFrom.REPLICA_PREFERRED));
         factory.afterPropertiesSet();
+        factory.start();
+        readConnectionFactory = factory;
+        return buildTemplate(factory);
+    }
 
-        log.info("✅ Redis Cloud connection factory created successfully");
-        return factory;
+    @PreDestroy
+    public void closeReadConnection() {
+        if (readConnectionFactory != null) {
+            readConnectionFactory.destroy();
+        }
     }
 
     /**
-     * Connection Factory for Local Development (No SSL)
-     * Only active when spring.data.redis.ssl.enabled=false or not set
+     * Pub/sub container (cluster refresh delegation)
      */
     @Bean
-    @ConditionalOnProperty(name = "spring.data.redis.ssl.enabled", havingValue = "false", matchIfMissing = true)
-    public RedisConnectionFactory redisLocalConnectionFactory() {
-        log.info("🔴 Configuring Local Redis connection (SSL disabled)...");
-        log.info("Host: {}, Port: {}", redisHost, redisPort);
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+
+    @Bean
+    public RedisCacheManager cacheManager(RedisConnectionFactory connectionFactory) {
+        log.info("🔴 Configuring RedisCacheManager...");
 
-        // Simple configuration for local Redis
-        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration();
-        config.setHostName(redisHost);
-        config.setPort(redisPort);
+        // Key serializer
+        RedisSerializationContext.SerializationPair<String> keySerializer =
+                RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer());
 
-        if (redisPassword != null && !redisPassword.isEmpty()) {
-            config.setPassword(redisPassword);
-        }
+        RedisSerializationContext.SerializationPair<Object> valuePair =
+                RedisSerializationContext.SerializationPair.fromSerializer(jsonSerializer());
 
-        LettuceConnectionFactory factory = new LettuceConnectionFactory(config);
-        factory.afterPropertiesSet();
+        // Cache config with TTL
+        RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
+                .serializeKeysWith(keySerializer)
+                .serializeValuesWith(valuePair)
+                .entryTtl(Duration.ofMinutes(10)); // TTL for cache
 
-        log.info("✅ Local Redis connection factory created successfully");
-        return factory;
+        RedisCacheManager cacheManager = RedisCacheManager.builder(connectionFactory)
+                .cacheDefaults(config)
+                .build();
+
+        log.info("✅ RedisCacheManager configured successfully");
+        return cacheManager;
     }
 
-    @Bean
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory) {
-        log.info("🔴 Configuring RedisTemplate...");
+    /* ==================================================================
+       PRIVATE METHODS
+    ================================================================== */
 
+    private RedisTemplate<String, Object> buildTemplate(RedisConnectionFactory connectionFactory) {
         RedisTemplate<String, Object> template = new RedisTemplate<>();
         template.setConnectionFactory(connectionFactory);
 
-        // Key is String
+        // Key is String (hash fields too: flight keys of the hash cache layout)
         template.setKeySerializer(new StringRedisSerializer());
+        template.setHashKeySerializer(new StringRedisSerializer());
 
         // Value is JSON
-        Jackson2JsonRedisSerializer<Object> valueSerializer =
-                new Jackson2JsonRedisSerializer<>(Object.class);
-
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.activateDefaultTyping(
-                BasicPolymorphicTypeValidator.builder()
-                        .allowIfBaseType(Object.class)
-                        .build(),
-                ObjectMapper.DefaultTyping.EVERYTHING,
-                JsonTypeInfo.As.PROPERTY
-        );
-
-        valueSerializer.setObjectMapper(mapper);
+        Jackson2JsonRedisSerializer<Object> valueSerializer = jsonSerializer();
         template.setValueSerializer(valueSerializer);
         template.setHashValueSerializer(valueSerializer);
 
         template.afterPropertiesSet();
-
-        log.info("✅ RedisTemplate configured successfully");
         return template;
     }
 
-    @Bean
-    public RedisCacheManager cacheManager(RedisConnectionFactory connectionFactory) {
-        log.info("🔴 Configuring RedisCacheManager...");
-
-        // Key serializer
-        RedisSerializationContext.SerializationPair<String> keySerializer =
-                RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer());
-
-        // Value serializer (JSON)
-        Jackson2JsonRedisSerializer<Object> valueSerializer =
-                new Jackson2JsonRedisSerializer<>(Object.class);
-
+    private Jackson2JsonRedisSerializer<Object> jsonSerializer() {
         ObjectMapper mapper = new ObjectMapper();
         mapper.activateDefaultTyping(
                 BasicPolymorphicTypeValidator.builder()
@@ -171,22 +216,93 @@ public class RedisConfig {
                 ObjectMapper.DefaultTyping.EVERYTHING,
                 JsonTypeInfo.As.PROPERTY
         );
-        valueSerializer.setObjectMapper(mapper);
+        return new Jackson2JsonRedisSerializer<>(mapper, Object.class);
+    }
 
-        RedisSerializationContext.SerializationPair<Object> valuePair =
-                RedisSerializationContext.SerializationPair.fromSerializer(valueSerializer);
+    private RedisConfiguration topologyConfiguration() {
+        RedisConfiguration config = switch (topology) {
+            case "cluster" -> {
+                RedisClusterConfiguration cluster = new RedisClusterConfiguration(clusterNodes);
+                cluster.setMaxRedirects(clusterMaxRedirects);
+                yield cluster;
+            }
+            case "sentinel" -> new RedisSentinelConfiguration(sentinelMaster, new HashSet<>(sentinelNodes));
+            case "master-replica" -> {
+                RedisStaticMasterReplicaConfiguration masterReplica =
+                        new RedisStaticMasterReplicaConfiguration(redisHost, redisPort);
+                for (String node : replicaNodes) {
+                    RedisNode replica = RedisNode.fromString(node);
+                    masterReplica.node(replica.getHost(), replica.getPort());
+                }
+                yield masterReplica;
+            }
+            default -> new RedisStandaloneConfiguration(redisHost, redisPort);
+        };
+
+        if (config instanceof RedisConfiguration.WithAuthentication auth) {
+            if (sslEnabled) {
+                auth.setUsername(redisUsername); // For Redis Cloud ACL
+            }
+            if (redisPassword != null && !redisPassword.isEmpty()) {
+                auth.setPassword(redisPassword);
+            }
+        }
+        return config;
+    }
 
-        // Cache config with TTL
-        RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
-                .serializeKeysWith(keySerializer)
-                .serializeValuesWith(valuePair)
-                .entryTtl(Duration.ofMinutes(10)); // TTL for cache
+    /**
+     * @param readFrom node selection for replica-aware topologies, null for standalone
+     */
+    private LettucePoolingClientConfiguration clientConfiguration(ReadFrom readFrom) {
+        GenericObjectPoolConfig<Object> poolConfig = new GenericObjectPoolConfig<>();
+        poolConfig.setMaxTotal(poolMaxActive);
+        poolConfig.setMaxIdle(poolMaxIdle);
+        poolConfig.setMinIdle(poolMinIdle);
+        poolConfig.setMaxWait(poolMaxWait);
+
+        LettucePoolingClientConfiguration.LettucePoolingClientConfigurationBuilder builder =
+                LettucePoolingClientConfiguration.builder()
+                        .poolConfig(poolConfig)
+                        .commandTimeout(Duration.ofSeconds(5))
+                        .clientOptions(clientOptions());
+        if (readFrom != null) {
+            builder.readFrom(readFrom);
+        }
 
-        RedisCacheManager cacheManager = RedisCacheManager.builder(connectionFactory)
-                .cacheDefaults(config)
+        if (sslEnabled) {
+            builder.useSsl()
+                    .disablePeerVerification();  // For Redis Cloud
+        }
+        return builder.build();
+    }
+
+    private ClientOptions clientOptions() {
+        SocketOptions socketOptions = SocketOptions.builder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .keepAlive(true)
                 .build();
 
-        log.info("✅ RedisCacheManager configured successfully");
-        return cacheManager;
+        if ("cluster".equals(topology)) {
+            // Follow slot migrations and failovers without restarting the app
+            ClusterTopologyRefreshOptions refreshOptions = ClusterTopologyRefreshOptions.builder()
+                    .enablePeriodicRefresh(Duration.ofSeconds(topologyRefreshSeconds))
+                    .enableAllAdaptiveRefreshTriggers()
+                    .build();
+
+            ClusterClientOptions.Builder cluster = ClusterClientOptions.builder()
+                    .socketOptions(socketOptions)
+                    .topologyRefreshOptions(refreshOptions);
+            if (sslEnabled) {
+                cluster.sslOptions(SslOptions.builder().build());
+            }
+            return cluster.build();
+        }
+
+        ClientOptions.Builder options = ClientOptions.builder()
+                .socketOptions(socketOptions);
+        if (sslEnabled) {
+            options.sslOptions(SslOptions.builder().build());
+        }
+        return options.build();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,74 @@
+package com.tanvan.ecommerce.controller;
+
+import com.tanvan.ecommerce.dto.BulkRefreshStatus;
+import com.tanvan.ecommerce.services.AirlineService;
+import com.tanvan.ecommerce.services.BulkRefreshService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Admin endpoints, disabled unless app.admin.enabled=true and always behind
+ * the X-Admin-Token header (AdminAccessFilter). No CORS: not called from browsers.
+ */
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    private final BulkRefreshService bulkRefreshService;
+    private final AirlineService airlineService;
+    public AdminController(BulkRefreshService bulkRefreshService, AirlineService airlineService) {
+        this.bulkRefreshService = bulkRefreshService;
+        this.airlineService = airlineService;
+    }
+
+    /**
+     * ✅ CLEAR CACHE cho một hoặc nhiều airport
+     * DELETE /api/admin/cache?iata=SFO hoặc ?iata=SGN,HAN,DAD
+     */
+    @DeleteMapping("/cache")
+    public ResponseEntity<String> clearCache(@RequestParam List<String> iata) {
+        airlineService.clearCache(iata);
+        return ResponseEntity.ok("Cache cleared for: " + String.join(",", iata));
+    }
+
+    /**
+     * ✅ CLEAR TẤT CẢ CACHE (bump generation, không FLUSHALL)
+     * DELETE /api/admin/cache/all
+     */
+    @DeleteMapping("/cache/all")
+    public ResponseEntity<String> clearAllCache() {
+        airlineService.clearAllCache();
+        return ResponseEntity.ok("All cache cleared successfully");
+    }
+
+    /**
+     * ✅ Danh sách airport group cấu hình trong app.bulk-refresh.groups
+     * GET /api/admin/refresh/groups
+     */
+    @GetMapping("/refresh/groups")
+    public Map<String, List<String>> getGroups() {
+        return bulkRefreshService.getGroups();
+    }
+
+    /**
+     * 🚀 BULK REFRESH - refresh cả một group airport, chạy nền
+     * POST /api/admin/refresh/groups/vn
+     */
+    @PostMapping("/refresh/groups/{group}")
+    public ResponseEntity<BulkRefreshStatus> refreshGroup(@PathVariable String group) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(bulkRefreshService.start(group));
+    }
+
+    /**
+     * ✅ Tiến độ + thời gian từng airport
+     * GET /api/admin/refresh/jobs/{id}
+     */
+    @GetMapping("/refresh/jobs/{id}")
+    public BulkRefreshStatus getJob(@PathVariable String id) {
+        return bulkRefreshService.getStatus(id);
+    }
+}
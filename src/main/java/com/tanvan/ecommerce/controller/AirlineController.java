@@ -1,15 +1,31 @@
 package com.tanvan.ecommerce.controller;
 
+import com.tanvan.ecommerce.dto.CachedFlightsResponse;
+import com.tanvan.ecommerce.dto.FlightView;
 import com.tanvan.ecommerce.entity.Airline;
 import com.tanvan.ecommerce.services.AirlineService;
+import com.tanvan.ecommerce.services.BoardViews;
+import com.tanvan.ecommerce.services.FlightResponseRenderer;
+import com.tanvan.ecommerce.services.FlightSearchIndex;
+import com.tanvan.ecommerce.services.FlightWatchService;
+import com.tanvan.ecommerce.services.FlightResponseRenderer.WireFormat;
 import com.tanvan.ecommerce.services.SimpleService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
 
 @RestController
 @RequestMapping("/api/flights")
@@ -18,18 +34,168 @@ public class AirlineController {
 
     private final AirlineService airlineService;
     private final SimpleService simpleService;
+    private final FlightResponseRenderer responseRenderer;
+    private final FlightSearchIndex searchIndex;
+    private final FlightWatchService watchService;
 
     @Autowired
     private StringRedisTemplate redisTemplate;
 
-    public AirlineController(AirlineService airlineService, SimpleService simpleService) {
+    public AirlineController(AirlineService airlineService, SimpleService simpleService,
+                             FlightResponseRenderer responseRenderer, FlightSearchIndex searchIndex,
+                             FlightWatchService watchService) {
         this.airlineService = airlineService;
         this.simpleService = simpleService;
+        this.responseRenderer = responseRenderer;
+        this.searchIndex = searchIndex;
+        this.watchService = watchService;
     }
 
+    /**
+     * GET /api/flights?iata=SGN
+     * GET /api/flights?iata=SGN&fields=flightIata,depTime,depActual,status (sparse fieldset)
+     * Accept: application/cbor | application/vnd.flightschedule.columnar+cbor (binary / columnar)
+     */
     @GetMapping
-    public ResponseEntity<Map<String, List<Airline>>> getFlights(@RequestParam String iata) {
-        return ResponseEntity.ok(airlineService.fetchAndSaveAllFlights(iata));
+    public ResponseEntity<?> getFlights(@RequestParam String iata,
+                                        @RequestParam(required = false) String fields,
+                                        @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        WireFormat format = WireFormat.fromAccept(accept);
+        if (fields == null && format == WireFormat.JSON) {
+            return ResponseEntity.ok(airlineService.fetchAndSaveAllFlights(iata));
+        }
+        SortedSet<String> selected = fields != null ? responseRenderer.parseFields(fields) : null;
+        AirlineService.CachedData board = airlineService.getBoard(iata);
+        return rendered(responseRenderer.render(BoardViews.departuresAndArrivals(board.getData()), selected,
+                "flights:" + iata.toUpperCase() + ":" + board.getMeta().timestamp(), format), format);
+    }
+
+    /**
+     * ✅ BOARD VIEW - danh sách đã sort sẵn / N chuyến sắp tới / delayed / cancelled
+     * GET /api/flights/board?iata=SGN&type=departures&view=next&limit=20
+     */
+    @GetMapping("/board")
+    public ResponseEntity<?> getBoardView(@RequestParam String iata,
+                                          @RequestParam(defaultValue = "departures") String type,
+                                          @RequestParam(defaultValue = "all") String view,
+                                          @RequestParam(defaultValue = "50") int limit,
+                                          @RequestParam(required = false) String fields,
+                                          @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        if (!BoardViews.isValidType(type) || !BoardViews.isValidView(view) || limit <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "type must be departures|arrivals, view must be all|next|delayed|cancelled, limit > 0");
+        }
+        WireFormat format = WireFormat.fromAccept(accept);
+        if (fields == null && format == WireFormat.JSON) {
+            return ResponseEntity.ok(airlineService.getBoardView(iata, type, view, limit));
+        }
+        SortedSet<String> selected = fields != null ? responseRenderer.parseFields(fields) : null;
+        AirlineService.CachedData board = airlineService.getBoard(iata);
+        List<FlightView> flights = BoardViews.select(board.getData(), type, view, limit);
+        // "next" thay đổi theo thời gian → không giữ bản render
+        String versionKey = BoardViews.VIEW_NEXT.equals(view) ? null
+                : "board:" + iata.toUpperCase() + ":" + type + ":" + view + ":" + limit + ":" + board.getMeta().timestamp();
+        return rendered(responseRenderer.render(flights, selected, versionKey, format), format);
+    }
+
+    /**
+     * 🔎 SEARCH - in-memory index, không chạm DB/AirLabs
+     * GET /api/flights/search?q=VN2
+     * GET /api/flights/search?airline=VJ&date=2026-01-01
+     * GET /api/flights/search?from=SGN&to=HAN
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> search(@RequestParam(required = false) String q,
+                                    @RequestParam(required = false) String airline,
+                                    @RequestParam(required = false) String from,
+                                    @RequestParam(required = false) String to,
+                                    @RequestParam(required = false) String date,
+                                    @RequestParam(defaultValue = "50") int limit,
+                                    @RequestParam(required = false) String fields,
+                                    @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        if ((q == null || q.isBlank()) && airline == null && from == null && to == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "q, airline, from or to is required");
+        }
+        if (limit <= 0 || limit > 500) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and 500");
+        }
+        List<FlightView> flights = searchIndex.search(q != null && !q.isBlank() ? q.trim() : null,
+                airline, from, to, date, limit);
+
+        WireFormat format = WireFormat.fromAccept(accept);
+        if (fields == null && format == WireFormat.JSON) {
+            return ResponseEntity.ok(flights);
+        }
+        SortedSet<String> selected = fields != null ? responseRenderer.parseFields(fields) : null;
+        return rendered(responseRenderer.render(flights, selected, null, format), format);
+    }
+
+    /**
+     * 🎯 LOOKUP - từng chuyến theo key (flight IATA + "_" + giờ theo lịch), HMGET với layout hash
+     * GET /api/flights/lookup?iata=SGN&type=departures&keys=VN213_2026-01-02 08:00,VJ120_2026-01-02 09:15
+     */
+    @GetMapping("/lookup")
+    public ResponseEntity<?> lookup(@RequestParam String iata,
+                                    @RequestParam(defaultValue = "departures") String type,
+                                    @RequestParam List<String> keys,
+                                    @RequestParam(required = false) String fields,
+                                    @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        if (!BoardViews.isValidType(type) || keys.isEmpty() || keys.size() > 100) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "type must be departures|arrivals, between 1 and 100 keys");
+        }
+        List<FlightView> flights = airlineService.lookupFlights(iata, BoardViews.DEPARTURES.equals(type), keys);
+
+        WireFormat format = WireFormat.fromAccept(accept);
+        if (fields == null && format == WireFormat.JSON) {
+            return ResponseEntity.ok(flights);
+        }
+        SortedSet<String> selected = fields != null ? responseRenderer.parseFields(fields) : null;
+        return rendered(responseRenderer.render(flights, selected, null, format), format);
+    }
+
+    /**
+     * ✈️ ROUTE - chuyến bay từ sân bay A đến sân bay B, lọc từ board đã cache của A
+     * GET /api/flights/route?from=SGN&to=HAN
+     */
+    @GetMapping("/route")
+    public ResponseEntity<?> getRoute(@RequestParam String from,
+                                      @RequestParam String to,
+                                      @RequestParam(required = false) String fields,
+                                      @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        if (!from.matches("[A-Za-z]{3}") || !to.matches("[A-Za-z]{3}")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from and to must be 3-letter IATA codes");
+        }
+        AirlineService.CachedData route = airlineService.getRoute(from, to);
+        List<FlightView> flights = route.getData().get(BoardViews.DEPARTURES);
+
+        WireFormat format = WireFormat.fromAccept(accept);
+        if (fields == null && format == WireFormat.JSON) {
+            return ResponseEntity.ok(flights);
+        }
+        SortedSet<String> selected = fields != null ? responseRenderer.parseFields(fields) : null;
+        return rendered(responseRenderer.render(flights, selected,
+                "route:" + from.toUpperCase() + ":" + to.toUpperCase() + ":" + route.getMeta().timestamp(), format), format);
+    }
+
+    /**
+     * 👀 WATCH - SSE, nhận thay đổi gate / delay / status của từng chuyến
+     * GET /api/flights/watch?flights=VN213,VJ120&date=2026-01-02
+     */
+    @GetMapping(value = "/watch", produces = "text/event-stream")
+    public SseEmitter watch(@RequestParam List<String> flights,
+                            @RequestParam(required = false) String date) {
+        String day;
+        try {
+            day = date != null ? LocalDate.parse(date).toString() : LocalDate.now().toString();
+        } catch (DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "date must be yyyy-MM-dd");
+        }
+        Set<String> keys = new LinkedHashSet<>();
+        for (String flight : flights) {
+            if (!flight.isBlank()) keys.add(FlightWatchService.watchKey(flight.trim(), day));
+        }
+        return watchService.watch(keys);
     }
 
     @GetMapping("/all")
@@ -45,10 +211,22 @@ public class AirlineController {
         return "Redis saved: " + value;
     }
 
-//    @GetMapping("/cached")
-//    public ResponseEntity<Map<String, List<Airline>>> getCachedFlights(@RequestParam String iata) {
-//        return ResponseEntity.ok(airlineService.getFlightsFromDatabase(iata));
-//    }
+    /**
+     * ⚡ QUICK LOAD - chỉ đọc L1/Redis/Postgres, không bao giờ chờ AirLabs
+     * GET /api/flights/cached?iata=SGN
+     */
+    @GetMapping("/cached")
+    public ResponseEntity<?> getCachedFlights(@RequestParam String iata,
+                                              @RequestParam(required = false) String fields,
+                                              @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        WireFormat format = WireFormat.fromAccept(accept);
+        if (fields == null && format == WireFormat.JSON) {
+            return ResponseEntity.ok(airlineService.getFlightsNonBlocking(iata));
+        }
+        SortedSet<String> selected = fields != null ? responseRenderer.parseFields(fields) : null;
+        CachedFlightsResponse response = airlineService.getFlightsNonBlocking(iata);
+        return rendered(responseRenderer.render(response, selected, null, format), format);
+    }
 
 //    @GetMapping("/departures")
 //    public ResponseEntity<List<Airline>> getDepartures(@RequestParam String iata) {
@@ -58,26 +236,6 @@ public class AirlineController {
 //    @GetMapping("/arrivals")
 //    public ResponseEntity<List<Airline>> getArrivals(@RequestParam String iata) {
 //        return ResponseEntity.ok(airlineService.fetchAndSaveArrivals(iata));
-//    }
-
-    /**
-     * ✅ CLEAR CACHE cho một airport
-     * DELETE /api/flights/cache?iata=SFO
-     */
-//    @DeleteMapping("/cache")
-//    public ResponseEntity<String> clearCache(@RequestParam String iata) {
-//        airlineService.clearCache(iata);
-//        return ResponseEntity.ok("Cache cleared for: " + iata);
-//    }
-
-    /**
-     * ✅ CLEAR TẤT CẢ CACHE
-     * DELETE /api/flights/cache/all
-     */
-//    @DeleteMapping("/cache/all")
-//    public ResponseEntity<String> clearAllCache() {
-//        airlineService.clearAllCache();
-//        return ResponseEntity.ok("All cache cleared successfully");
 //    }
 
     /**
@@ -89,4 +247,11 @@ public class AirlineController {
 //        airlineService.clearCache(iata);
 //        return ResponseEntity.ok(airlineService.fetchAndSaveAllFlights(iata));
 //    }
-}
\ No newline at end of file
+
+    private ResponseEntity<byte[]> rendered(byte[] body, WireFormat format) {
+        return ResponseEntity.ok()
+                .contentType(format.getMediaType())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .body(body);
+    }
+}
@@ -0,0 +1,67 @@
+package com.tanvan.ecommerce.controller;
+
+import com.tanvan.ecommerce.dto.DelayStats;
+import com.tanvan.ecommerce.services.DelayRollupService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+
+@RestController
+@RequestMapping("/api/analytics")
+@CrossOrigin(origins = "*")
+public class AnalyticsController {
+
+    // Giới hạn khoảng ngày để số row rollup đọc mỗi request luôn nhỏ
+    private static final int MAX_DAYS = 31;
+
+    private final DelayRollupService delayRollups;
+
+    public AnalyticsController(DelayRollupService delayRollups) {
+        this.delayRollups = delayRollups;
+    }
+
+    /**
+     * 📊 DELAYS - on-time performance từ bảng rollup, không quét airline_schedule
+     * GET /api/analytics/delays?airline=VN&airport=SGN
+     * GET /api/analytics/delays?airport=HAN&direction=arrivals&from=2026-01-01&to=2026-01-07
+     */
+    @GetMapping("/delays")
+    public ResponseEntity<DelayStats> getDelays(@RequestParam(required = false) String airline,
+                                                @RequestParam(required = false) String airport,
+                                                @RequestParam(defaultValue = "departures") String direction,
+                                                @RequestParam(required = false) String from,
+                                                @RequestParam(required = false) String to) {
+        if (airline == null && airport == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "airline or airport is required");
+        }
+        String side = switch (direction) {
+            case "departures" -> DelayRollupService.DEPARTURE;
+            case "arrivals" -> DelayRollupService.ARRIVAL;
+            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "direction must be departures|arrivals");
+        };
+
+        LocalDate fromDate;
+        LocalDate toDate;
+        try {
+            fromDate = from != null ? LocalDate.parse(from) : LocalDate.now();
+            toDate = to != null ? LocalDate.parse(to) : fromDate;
+        } catch (DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from/to must be yyyy-MM-dd");
+        }
+        if (toDate.isBefore(fromDate) || ChronoUnit.DAYS.between(fromDate, toDate) >= MAX_DAYS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "to must be on or after from, at most " + MAX_DAYS + " days");
+        }
+
+        return ResponseEntity.ok(delayRollups.query(
+                airline != null ? airline.toUpperCase() : null,
+                airport != null ? airport.toUpperCase() : null,
+                side, fromDate.atStartOfDay(), toDate.plusDays(1).atStartOfDay()));
+    }
+}
@@ -1,14 +1,17 @@
 package com.tanvan.ecommerce.controller;
 
+import com.tanvan.ecommerce.services.FlightResponseRenderer;
 import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 
 @Controller
 public class FlightBoardController {
 
     @GetMapping("/")
-    public String flightBoard() {
+    public String flightBoard(Model model) {
+        // Field set dùng chung với warm-up lúc khởi động
+        model.addAttribute("boardFields", FlightResponseRenderer.BOARD_FIELDS);
         return "FlightBoard"; // không cần .html
     }
 }
-
@@ -0,0 +1,39 @@
+package com.tanvan.ecommerce.dto;
+
+import java.util.List;
+
+/**
+ * Progress of a bulk refresh job.
+ * @param status running | completed
+ * @param airports per-airport state and timings, in group order
+ */
+public record BulkRefreshStatus(
+        String id,
+        String group,
+        String status,
+        int total,
+        int done,
+        int failed,
+        int skipped,
+        long startedAt,
+        long elapsedMillis,
+        List<Airport> airports
+) {
+
+    /**
+     * @param state queued | fetching | syncing | done | failed | skipped
+     * @param fetchMillis AirLabs departures + arrivals
+     * @param dbMillis diff + write of the whole batch the airport was part of
+     * @param cacheMillis reload from DB + Redis/L1 write
+     */
+    public record Airport(
+            String iata,
+            String state,
+            Long fetchMillis,
+            Long dbMillis,
+            Long cacheMillis,
+            Integer changes,
+            String error
+    ) {
+    }
+}
@@ -0,0 +1,20 @@
+package com.tanvan.ecommerce.dto;
+
+import java.util.List;
+
+/**
+ * Response of the non-blocking read path, with freshness metadata.
+ * @param source memory | redis | database
+ * @param ageSeconds age of the cached copy, null when read from the database
+ * @param stale true when a newer copy is being fetched in the background
+ * @param refreshScheduled true when this request scheduled a background refresh
+ */
+public record CachedFlightsResponse(
+        List<FlightView> departures,
+        List<FlightView> arrivals,
+        String source,
+        Long ageSeconds,
+        boolean stale,
+        boolean refreshScheduled
+) {
+}
@@ -0,0 +1,18 @@
+package com.tanvan.ecommerce.dto;
+
+import java.util.Map;
+
+/**
+ * Column-oriented encoding of a flight list (struct of arrays).
+ * @param rows number of flights
+ * @param codes string columns as indexes into the payload dictionary, -1 = null
+ * @param numbers integer columns (duration, delayed), Integer.MIN_VALUE = null
+ * @param timestamps epoch-second columns (depTimeTs, arrTimeTs), Long.MIN_VALUE = null
+ */
+public record ColumnarFlights(
+        int rows,
+        Map<String, int[]> codes,
+        Map<String, int[]> numbers,
+        Map<String, long[]> timestamps
+) {
+}
@@ -0,0 +1,24 @@
+package com.tanvan.ecommerce.dto;
+
+/**
+ * On-time performance aggregated from the delay rollups.
+ * @param direction D = by departure airport/hour, A = by arrival airport/hour
+ * @param p50DelayMinutes median delay, approximated from the rollup histogram
+ * @param p90DelayMinutes 90th percentile delay, approximated from the rollup histogram
+ */
+public record DelayStats(
+        String airline,
+        String airport,
+        String direction,
+        String from,
+        String to,
+        long flights,
+        long delayedFlights,
+        long cancelled,
+        long delayMinutes,
+        double avgDelayMinutes,
+        double onTimeRate,
+        int p50DelayMinutes,
+        int p90DelayMinutes
+) {
+}
@@ -0,0 +1,42 @@
+package com.tanvan.ecommerce.dto;
+
+import com.tanvan.ecommerce.entity.Airline;
+
+/**
+ * Read-only view of a flight for the board, cache and API responses.
+ * Built directly by JPQL constructor expressions, never managed by the persistence context.
+ */
+public record FlightView(
+        String id,
+        String flightNumber,
+        String flightIata,
+        String airlineIata,
+
+        String depIata,
+        String depTerminal,
+        String depGate,
+        String depTime,
+        String depActual,
+        Long depTimeTs,
+
+        String arrIata,
+        String arrTerminal,
+        String arrGate,
+        String arrTime,
+        String arrActual,
+        Long arrTimeTs,
+
+        String status,
+        Integer duration,
+        Integer delayed
+) {
+
+    public static FlightView from(Airline a) {
+        return new FlightView(
+                a.getId(), a.getFlightNumber(), a.getFlightIata(), a.getAirlineIata(),
+                a.getDepIata(), a.getDepTerminal(), a.getDepGate(), a.getDepTime(), a.getDepActual(), a.getDepTimeTs(),
+                a.getArrIata(), a.getArrTerminal(), a.getArrGate(), a.getArrTime(), a.getArrActual(), a.getArrTimeTs(),
+                a.getStatus(), a.getDuration(), a.getDelayed()
+        );
+    }
+}
@@ -0,0 +1,22 @@
+package com.tanvan.ecommerce.dto;
+
+/**
+ * Result of a schedule dump import.
+ * @param rowsRead records read from the dump
+ * @param rowsRejected records dropped by validation (same rules as a sync)
+ * @param rowsLoaded rows inserted or updated in airline_schedule
+ * @param failedChunks chunks rolled back (their rows are not loaded)
+ * @param airports airports whose cache was rebuilt
+ */
+public record ImportReport(
+        String format,
+        long rowsRead,
+        long rowsRejected,
+        long rowsLoaded,
+        int chunks,
+        int failedChunks,
+        int airports,
+        long millis,
+        long rowsPerSecond
+) {
+}
@@ -8,7 +8,8 @@ import lombok.Data;
         name = "airline_schedule",
         indexes = {
                 @Index(name = "idx_dep_iata", columnList = "dep_iata"),
-                @Index(name = "idx_arr_iata", columnList = "arr_iata")
+                @Index(name = "idx_arr_iata", columnList = "arr_iata"),
+                @Index(name = "idx_route", columnList = "dep_iata, arr_iata, dep_time")
         },
         uniqueConstraints = {
                 @UniqueConstraint(
@@ -54,6 +55,9 @@ public class Airline {
     @Column(name = "dep_actual")
     private String depActual;
 
+    @Column(name = "dep_time_ts")
+    private Long depTimeTs;       // epoch seconds (UTC) của dep_time
+
     // ======= Arrival =======
     @Column(name = "arr_iata")
     private String arrIata;
@@ -70,6 +74,9 @@ public class Airline {
     @Column(name = "arr_actual")
     private String arrActual;
 
+    @Column(name = "arr_time_ts")
+    private Long arrTimeTs;       // epoch seconds (UTC) của arr_time
+
     // ======= Other =======
     private String status;
 
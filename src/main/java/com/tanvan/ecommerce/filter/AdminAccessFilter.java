@@ -0,0 +1,63 @@
+package com.tanvan.ecommerce.filter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Guards /api/admin/** (the app has no security layer):
+ *  - app.admin.enabled=false (default) → 404, the endpoints do not exist
+ *  - otherwise the X-Admin-Token header must match app.admin.token (401),
+ *    an empty configured token rejects everything
+ */
+@Component
+public class AdminAccessFilter extends OncePerRequestFilter {
+
+    public static final String TOKEN_HEADER = "X-Admin-Token";
+
+    @Value("${app.admin.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.admin.token:}")
+    private String token;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/admin");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain)
+            throws ServletException, IOException {
+
+        if (!enabled) {
+            reject(response, HttpStatus.NOT_FOUND, "Not found");
+            return;
+        }
+        String presented = request.getHeader(TOKEN_HEADER);
+        if (token.isBlank() || presented == null || !MessageDigest.isEqual(
+                token.getBytes(StandardCharsets.UTF_8), presented.getBytes(StandardCharsets.UTF_8))) {
+            reject(response, HttpStatus.UNAUTHORIZED, "Missing or invalid " + TOKEN_HEADER);
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"status\":" + status.value() + ",\"error\":\"" + message + "\"}");
+    }
+}
@@ -0,0 +1,64 @@
+package com.tanvan.ecommerce.filter;
+
+import com.tanvan.ecommerce.services.IataCodeRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Rejects malformed / unknown airport codes on GET /api/flights/** before any
+ * cache, DB or AirLabs work (params iata, from, to).
+ * 400 for anything that is not three letters, 404 for codes known not to be airports.
+ */
+@Component
+@RequiredArgsConstructor
+public class IataCodeFilter extends OncePerRequestFilter {
+
+    private static final List<String> AIRPORT_PARAMS = List.of("iata", "from", "to");
+
+    private final IataCodeRegistry registry;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"GET".equals(request.getMethod()) || !request.getRequestURI().startsWith("/api/flights");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain)
+            throws ServletException, IOException {
+
+        for (String param : AIRPORT_PARAMS) {
+            String code = request.getParameter(param);
+            if (code == null) continue;
+            switch (registry.check(code)) {
+                case MALFORMED -> {
+                    reject(response, HttpStatus.BAD_REQUEST, param + " must be a 3-letter IATA airport code");
+                    return;
+                }
+                case UNKNOWN -> {
+                    reject(response, HttpStatus.NOT_FOUND, "Unknown airport: " + code.toUpperCase());
+                    return;
+                }
+                case VALID -> { }
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"status\":" + status.value() + ",\"error\":\"" + message + "\"}");
+    }
+}
@@ -1,12 +1,31 @@
 package com.tanvan.ecommerce.repository;
 
+import com.tanvan.ecommerce.dto.FlightView;
 import com.tanvan.ecommerce.entity.Airline;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Set;
 
 public interface AirlineRepository extends JpaRepository<Airline, Long> {
+
+    // Projection cho read path: không tạo managed entity, không dirty-checking snapshot
+    String FLIGHT_VIEW_SELECT = "select new com.tanvan.ecommerce.dto.FlightView(" +
+            "a.id, a.flightNumber, a.flightIata, a.airlineIata, " +
+            "a.depIata, a.depTerminal, a.depGate, a.depTime, a.depActual, a.depTimeTs, " +
+            "a.arrIata, a.arrTerminal, a.arrGate, a.arrTime, a.arrActual, a.arrTimeTs, " +
+            "a.status, a.duration, a.delayed) from Airline a ";
+
+    // Hub airports return thousands of rows, fetch them in large round trips
+    String VIEW_FETCH_SIZE = "500";
+
     boolean existsByFlightIataAndDepTime(String flightNumber, String depTime);
 
     // Lấy chuyến bay ĐẾN theo sân bay đích
@@ -20,7 +39,48 @@ public interface AirlineRepository extends JpaRepository<Airline, Long> {
 
     List<Airline> findByFlightIataIn(Set<String> flightIatas);
 
+    // SELECT ... FOR UPDATE cho sync, khóa theo thứ tự id để hai sync song song không deadlock
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select a from Airline a where a.flightIata in :flightIatas order by a.id")
+    List<Airline> findByFlightIataInForUpdate(@Param("flightIatas") Set<String> flightIatas);
+
     Airline findByFlightIataAndDepTime(String flightIata, String depTime);
 
     Airline findByFlightIataAndArrTime(String flightIata, String arrTime);
+
+    /* ==================================================================
+       READ-ONLY PROJECTIONS
+    ================================================================== */
+
+    // Chuyến bay ĐI của một sân bay, dạng read-only view
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = VIEW_FETCH_SIZE))
+    @Query(FLIGHT_VIEW_SELECT + "where a.depIata = :iata")
+    List<FlightView> findDepartureViews(@Param("iata") String depIata);
+
+    // Chuyến bay ĐẾN của một sân bay, dạng read-only view
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = VIEW_FETCH_SIZE))
+    @Query(FLIGHT_VIEW_SELECT + "where a.arrIata = :iata")
+    List<FlightView> findArrivalViews(@Param("iata") String arrIata);
+
+    // Chuyến bay giữa hai sân bay (index idx_route)
+    @Transactional(readOnly = true)
+    @Query(FLIGHT_VIEW_SELECT + "where a.depIata = :from and a.arrIata = :to order by a.depTime")
+    List<FlightView> findRouteViews(@Param("from") String depIata, @Param("to") String arrIata);
+
+    // Toàn bộ bảng, chỉ dùng để rebuild search index
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = VIEW_FETCH_SIZE))
+    @Query(FLIGHT_VIEW_SELECT)
+    List<FlightView> findAllViews();
+
+    // Mã sân bay đã có trong DB (học vào IataCodeRegistry lúc khởi động)
+    @Transactional(readOnly = true)
+    @Query("select distinct a.depIata from Airline a where a.depIata is not null")
+    List<String> findDistinctDepIata();
+
+    @Transactional(readOnly = true)
+    @Query("select distinct a.arrIata from Airline a where a.arrIata is not null")
+    List<String> findDistinctArrIata();
 }
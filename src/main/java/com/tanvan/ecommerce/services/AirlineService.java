@@ -1,21 +1,31 @@
 package com.tanvan.ecommerce.services;
 
+import com.tanvan.ecommerce.config.ReplicaRoutingDataSource;
+import com.tanvan.ecommerce.dto.CachedFlightsResponse;
+import com.tanvan.ecommerce.dto.FlightView;
 import com.tanvan.ecommerce.entity.Airline;
 import com.tanvan.ecommerce.repository.AirlineRepository;
+import com.tanvan.ecommerce.utils.AdaptiveConcurrencyLimiter;
+import com.tanvan.ecommerce.utils.AdaptiveConcurrencyLimiter.LimitExceededException;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Isolation;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -23,74 +33,304 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class AirlineService {
 
+    // Staleness dùng cho priority khi không có bản cache nào / khi node khác chuyển yêu cầu sang
+    private static final double NOTHING_CACHED_STALENESS = 10;
+    private static final double DELEGATED_STALENESS = 1;
+
     private final AirlineRepository airlineRepository;
     private final RedisService redisService;
+    private final ClusterMembershipService clusterMembership;
+    private final FreshnessPolicy freshnessPolicy;
+    private final LocalFlightCache localCache;
+    private final RefreshScheduler refreshScheduler;
+    private final FlightSearchIndex searchIndex;
+    private final DelayRollupService delayRollups;
+    private final FlightEventPublisher eventPublisher;
+    private final IataCodeRegistry iataCodes;
+    private final AdaptiveConcurrencyLimiter missPathLimiter;
+    private final AdaptiveConcurrencyLimiter dbSyncLimiter;
+    private final PlatformTransactionManager transactionManager;
     private final RestTemplate restTemplate = new RestTemplate();
 
+    // Transaction của applySync: diff + ghi + delay rollup commit cùng nhau
+    private TransactionTemplate syncTransaction;
+
     @Value("${airlabs.api.key}")
     private String airlabsApiKey;
 
     @Value("${airlabs.api.url}")
     private String airlabsBaseUrl;
 
-    // Cache TTL: 2 minutes (120 seconds)
-    private static final int CACHE_TTL_SECONDS = 120;
+    // Sau khi sync, đọc từ primary trong khoảng này để không bị replica lag
+    @Value("${app.datasource.replica.read-your-writes-ms:5000}")
+    private long readYourWritesMillis;
 
-    // Stale threshold: 30 seconds
-    private static final int STALE_THRESHOLD_SECONDS = 30;
+    // iata → thời điểm sync gần nhất
+    private final Map<String, Long> lastWriteMillis = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void initSyncTransaction() {
+        syncTransaction = new TransactionTemplate(transactionManager);
+        // Giảm isolation xuống READ_COMMITTED để giảm khóa, tăng concurrency
+        syncTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+    }
+
+    @PostConstruct
+    void registerRefreshHandler() {
+        // Node khác gửi yêu cầu refresh cho airport mà node này sở hữu
+        clusterMembership.onRefreshRequest(iata -> refreshInBackground(iata, DELEGATED_STALENESS));
+    }
 
     /*
      * ===========================================================
-     * PUBLIC API - Cache Strategy (0-30s fresh, 30-120s stale+refresh, >120s expired)
+     * PUBLIC API - Cache Strategy (fresh → stale+refresh → expired)
+     * Window của mỗi airport do FreshnessPolicy tính, lưu cùng cache trong CacheMeta
      * ============================================================
      */
 
     /**
      * Fetch both departures and arrivals with intelligent cache strategy
      */
-    public Map<String, List<Airline>> fetchAndSaveAllFlights(String iata) {
-        String redisKey = "FLIGHTS:" + iata.toUpperCase();
-        CachedData cached = redisService.getFlightsWithTimestamp(redisKey);
+    public Map<String, List<FlightView>> fetchAndSaveAllFlights(String iata) {
+        return BoardViews.departuresAndArrivals(getBoard(iata).getData());
+    }
+
+    /**
+     * One precomputed view of the board: sorted list, next-N window or a status bucket
+     */
+    public List<FlightView> getBoardView(String iata, String type, String view, int limit) {
+        return BoardViews.select(getBoard(iata).getData(), type, view, limit);
+    }
+
+    /**
+     * Flights from one airport to another. Derived from the cached departures of the origin
+     * (no AirLabs call of its own) and kept under a route key that expires with the origin's
+     * stale window; when the origin is not cached, read through the (dep_iata, arr_iata, dep_time) index.
+     * Data holds a single list under {@link BoardViews#DEPARTURES}.
+     */
+    public CachedData getRoute(String from, String to) {
+        String origin = from.toUpperCase();
+        String destination = to.toUpperCase();
+        String routeKey = redisService.routeKey(origin, destination);
+
+        CachedData route = redisService.getFlightsWithTimestamp(routeKey);
+        if (route != null) {
+            log.debug("✅ Route cache: {}", routeKey);
+            return route;
+        }
+
+        // Lọc từ board đã cache của sân bay đi, route key hết hạn cùng lúc board bị stale
+        CachedData board = lookupCache(origin);
+        if (board != null) {
+            CacheMeta meta = board.getMeta();
+            Map<String, List<FlightView>> data = new HashMap<>();
+            data.put(BoardViews.DEPARTURES, BoardViews.route(board.getData(), destination));
+
+            long remaining = meta.staleSeconds() - board.getAgeSeconds();
+            if (remaining > 0) {
+                redisService.saveFlights(routeKey, data, meta, remaining);
+            } else {
+                requestRefresh(origin, staleness(board));
+            }
+            return new CachedData(data, meta);
+        }
+
+        // Sân bay đi chưa có trong cache → đọc DB qua idx_route, giới hạn như đường chậm
+        log.info("🔄 Route miss: {}", routeKey);
+        AdaptiveConcurrencyLimiter.Permit permit = missPathLimiter.tryAcquire();
+        if (permit == null) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Route " + origin + "-" + destination + " is loading, retry shortly");
+        }
+        long startedAt = System.currentTimeMillis();
+        List<FlightView> flights;
+        try {
+            flights = airlineRepository.findRouteViews(origin, destination);
+            permit.success();
+        } catch (RuntimeException e) {
+            permit.dropped();
+            throw e;
+        }
+
+        Map<String, List<FlightView>> data = new HashMap<>();
+        data.put(BoardViews.DEPARTURES, flights);
+        FreshnessPolicy.Freshness freshness = freshnessPolicy.freshnessFor(origin);
+        long now = System.currentTimeMillis();
+        CacheMeta meta = new CacheMeta(now, freshness.staleSeconds(), freshness.ttlSeconds(), now - startedAt);
+        redisService.saveFlights(routeKey, data, meta, freshness.staleSeconds());
+        return new CachedData(data, meta);
+    }
+
+    /**
+     * Single flights of an airport board by flight key (flight IATA + "_" + scheduled time).
+     * HMGET on the hash layout, filtered from the cached board otherwise / on a hash miss.
+     */
+    public List<FlightView> lookupFlights(String iata, boolean isDeparture, List<String> flightKeys) {
+        String code = iata.toUpperCase();
+        if (redisService.isHashLayout()) {
+            List<String> fields = new ArrayList<>(flightKeys.size());
+            for (String key : flightKeys) {
+                fields.add(RedisService.flightField(isDeparture, key));
+            }
+            List<FlightView> hit = redisService.getAirportFlights(code, fields);
+            if (hit != null) return hit;
+        }
+        Set<String> wanted = new HashSet<>(flightKeys);
+        List<FlightView> flights = new ArrayList<>();
+        for (FlightView f : getBoard(code).getData().get(isDeparture ? BoardViews.DEPARTURES : BoardViews.ARRIVALS)) {
+            if (wanted.contains(RedisService.flightKey(f, isDeparture))) flights.add(f);
+        }
+        return flights;
+    }
+
+    /**
+     * Cached board of an airport (raw lists + precomputed views) with its metadata,
+     * same cache strategy as /api/flights. The metadata timestamp identifies the version.
+     */
+    public CachedData getBoard(String iata) {
+        freshnessPolicy.recordRequest(iata);
+        String redisKey = redisService.flightsKey(iata);
+        CachedData cached = lookupCache(iata);
 
         if (cached != null) {
+            CacheMeta meta = cached.getMeta();
             long age = cached.getAgeSeconds();
-            if (age < STALE_THRESHOLD_SECONDS) {
-                log.debug("✅ Fresh cache: {}", redisKey); // Giảm mức log xuống debug để ít overhead hơn
-                return cached.getData();
+            if (age < meta.staleSeconds()) {
+                // XFetch: thỉnh thoảng refresh sớm để tránh nhiều key hết hạn cùng lúc
+                if (freshnessPolicy.shouldRefreshEarly(meta.timestamp(), meta.staleSeconds(), meta.computeMillis())) {
+                    log.debug("🎲 Early refresh: {}", redisKey);
+                    requestRefresh(iata, staleness(cached));
+                } else {
+                    log.debug("✅ Fresh cache: {}", redisKey); // Giảm mức log xuống debug để ít overhead hơn
+                }
+                return cached;
             }
-            if (age < CACHE_TTL_SECONDS) {
+            if (age < meta.ttlSeconds()) {
                 log.debug("⚡ Stale cache → background refresh: {}", redisKey);
-                refreshAllFlightsAsync(iata);
-                return cached.getData();
+                requestRefresh(iata, staleness(cached));
+                return cached;
             }
-            // expired → xóa và fetch mới
-            redisService.deleteFlights(redisKey);
+            // expired → fetch mới, giữ bản cũ làm fallback khi đường chậm quá tải
+            // (syncAndCache ghi đè key, không cần xóa trước)
+        }
+
+        // Redis trống nhưng còn bản từ snapshot lúc khởi động → phục vụ như stale, refresh chạy nền
+        LocalFlightCache.Entry restored = localCache.get(iata);
+        if (cached == null && restored != null && restored.isRestored()) {
+            log.debug("♻️ Snapshot copy → background refresh: {}", redisKey);
+            CachedData snapshot = restored.cached();
+            requestRefresh(iata, staleness(snapshot));
+            return snapshot;
         }
 
-        // Cache miss / expired → fetch mới
+        // Cache miss / expired → fetch mới, số request cùng lúc đi đường chậm bị giới hạn
         log.info("🔄 Cache miss: {}", redisKey); // Giữ info cho cache miss vì quan trọng
+        AdaptiveConcurrencyLimiter.Permit permit = missPathLimiter.tryAcquire();
+        if (permit == null) {
+            return shedMiss(iata, cached);
+        }
+        try {
+            CachedData fresh = syncAndCache(iata);
+            permit.success();
+            return fresh;
+        } catch (LimitExceededException e) {
+            // dbSyncLimiter đầy, không phải đường miss chậm → không backoff limiter này
+            permit.ignore();
+            return shedMiss(iata, cached);
+        } catch (RuntimeException e) {
+            permit.dropped();
+            throw e;
+        }
+    }
 
-        String depUrl = buildUrl("dep_iata", iata);
-        String arrUrl = buildUrl("arr_iata", iata);
+    /**
+     * Slow path saturated: serve whatever copy is left (expired Redis copy or old L1 entry)
+     * and refresh in the background, 503 when there is nothing to serve
+     */
+    private CachedData shedMiss(String iata, CachedData expired) {
+        CachedData fallback = expired;
+        if (fallback == null) {
+            LocalFlightCache.Entry local = localCache.get(iata);
+            fallback = local != null ? local.cached() : null;
+        }
+        if (fallback != null) {
+            log.warn("🚦 Slow path saturated, serving stale copy: FLIGHTS:{}", iata);
+            requestRefresh(iata, staleness(fallback));
+            return fallback;
+        }
+        log.warn("🚦 Slow path saturated, nothing cached: FLIGHTS:{}", iata);
+        requestRefresh(iata, NOTHING_CACHED_STALENESS);
+        throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                "Flights for " + iata.toUpperCase() + " are loading, retry shortly");
+    }
 
-        // Gọi song song hai syncFlights bằng CompletableFuture để giảm thời gian chờ
-        CompletableFuture<Void> depFuture = CompletableFuture.runAsync(() -> syncFlights(depUrl, true));
-        CompletableFuture<Void> arrFuture = CompletableFuture.runAsync(() -> syncFlights(arrUrl, false));
+    /**
+     * Non-blocking read: L1 → Redis → Postgres, never waits on AirLabs.
+     * Missing or stale data only schedules a background refresh.
+     */
+    public CachedFlightsResponse getFlightsNonBlocking(String iata) {
+        String code = iata.toUpperCase();
+        freshnessPolicy.recordRequest(code);
 
-        // Chờ cả hai hoàn thành
-        CompletableFuture.allOf(depFuture, arrFuture).join();
+        LocalFlightCache.Entry local = localCache.get(code);
+        if (local != null && local.isRecent()) {
+            return respond(code, local.cached(), "memory");
+        }
 
-        // Lấy từ DB
-        List<Airline> departures = airlineRepository.findByDepIata(iata);
-        List<Airline> arrivals   = airlineRepository.findByArrIata(iata);
+        CachedData cached = redisService.getAirport(code);
+        if (cached != null) {
+            localCache.put(code, cached);
+            return respond(code, cached, "redis");
+        }
 
-        Map<String, List<Airline>> result = new HashMap<>();
-        result.put("departures", departures);
-        result.put("arrivals", arrivals);
+        // Redis trống nhưng node này còn bản cũ → dùng tạm
+        if (local != null) {
+            return respond(code, local.cached(), "memory");
+        }
+
+        // Fallback Postgres, refresh chạy nền
+        requestRefresh(code, NOTHING_CACHED_STALENESS);
+        AdaptiveConcurrencyLimiter.Permit permit = missPathLimiter.tryAcquire();
+        if (permit == null) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Flights for " + code + " are loading, retry shortly");
+        }
+        Map<String, List<FlightView>> data;
+        try {
+            data = loadFromDatabase(code);
+            permit.success();
+        } catch (RuntimeException e) {
+            permit.dropped();
+            throw e;
+        }
+        return new CachedFlightsResponse(
+                data.get(BoardViews.DEPARTURES), data.get(BoardViews.ARRIVALS), "database", null, true, true);
+    }
 
-        redisService.saveFlightsWithTTL(redisKey, result, CACHE_TTL_SECONDS);
+    private CachedFlightsResponse respond(String code, CachedData cached, String source) {
+        long age = cached.getAgeSeconds();
+        boolean stale = age >= cached.getMeta().staleSeconds();
+        if (stale) {
+            requestRefresh(code, staleness(cached));
+        }
+        return new CachedFlightsResponse(
+                cached.getData().get(BoardViews.DEPARTURES), cached.getData().get(BoardViews.ARRIVALS),
+                source, age, stale, stale);
+    }
 
-        return result;
+    /**
+     * L1 nếu vừa load, ngược lại đọc Redis và lưu lại vào L1
+     */
+    private CachedData lookupCache(String iata) {
+        LocalFlightCache.Entry local = localCache.get(iata);
+        if (local != null && local.isRecent()) {
+            return local.cached();
+        }
+        CachedData cached = redisService.getAirport(iata);
+        if (cached != null) {
+            localCache.put(iata, cached);
+        }
+        return cached;
     }
 
     /*
@@ -100,33 +340,40 @@ public class AirlineService {
      */
 
     /**
-     * Background refresh for all flights (non-blocking)
+     * Refresh on the owner node only: local when this node owns the airport,
+     * otherwise forwarded to the owner so AirLabs is called once per airport cluster-wide
+     * @param staleness age / stale window of the copy being served
+     */
+    private void requestRefresh(String iata, double staleness) {
+        String code = iata.toUpperCase();
+        if (clusterMembership.isOwner(code) || !clusterMembership.delegateRefresh(code)) {
+            refreshInBackground(code, staleness);
+        }
+    }
+
+    /**
+     * Queue a refresh on the refresh scheduler (deduplicated per airport, popular and
+     * stale airports first), the caller never waits on AirLabs
+     */
+    private void refreshInBackground(String iata, double staleness) {
+        refreshScheduler.submit(iata, freshnessPolicy.refreshPriority(iata, staleness),
+                () -> refreshAllFlightsAsync(iata));
+    }
+
+    private static double staleness(CachedData cached) {
+        return (double) cached.getAgeSeconds() / Math.max(1, cached.getMeta().staleSeconds());
+    }
+
+    /**
+     * Background refresh for all flights, runs on a refresh scheduler worker
      */
-    @Async
     public void refreshAllFlightsAsync(String iata) {
-        String lockKey = "LOCK:FLIGHTS:" + iata.toUpperCase();
+        String lockKey = redisService.flightsLockKey(iata);
         String token = redisService.acquireLock(lockKey, 60);
         if (token != null) { // Giả sử RedisService có phương thức acquireLock (sử dụng SETNX với expire)
             try {
                 log.info("🔄 Background refresh started: FLIGHTS:{}", iata);
-                String depUrl = buildUrl("dep_iata", iata);
-                String arrUrl = buildUrl("arr_iata", iata);
-
-                // Gọi song song trong async để tối ưu
-                CompletableFuture<Void> depFuture = CompletableFuture.runAsync(() -> syncFlights(depUrl, true));
-                CompletableFuture<Void> arrFuture = CompletableFuture.runAsync(() -> syncFlights(arrUrl, false));
-                CompletableFuture.allOf(depFuture, arrFuture).join();
-
-                List<Airline> departures = airlineRepository.findByDepIata(iata);
-                List<Airline> arrivals   = airlineRepository.findByArrIata(iata);
-
-                Map<String, List<Airline>> result = new HashMap<>();
-                result.put("departures", departures);
-                result.put("arrivals", arrivals);
-
-                String redisKey = "FLIGHTS:" + iata.toUpperCase();
-                redisService.saveFlightsWithTTL(redisKey, result, CACHE_TTL_SECONDS);
-
+                syncAndCache(iata);
                 log.info("✅ Background refresh completed: FLIGHTS:{}", iata);
             } catch (Exception e) {
                 log.error("❌ Background refresh failed: FLIGHTS:{} - {}", iata, e.getMessage(), e);
@@ -138,16 +385,172 @@ public class AirlineService {
         }
     }
 
+    /**
+     * Sync departures + arrivals from AirLabs, reload from DB and write the cache
+     * with a freshness window adapted to this airport
+     */
+    private CachedData syncAndCache(String iata) {
+        long startedAt = System.currentTimeMillis();
+
+        // Gọi song song hai syncFlights bằng CompletableFuture để giảm thời gian chờ
+        CompletableFuture<SyncResult> depFuture = CompletableFuture.supplyAsync(() -> syncFlights(iata, true));
+        CompletableFuture<SyncResult> arrFuture = CompletableFuture.supplyAsync(() -> syncFlights(iata, false));
+
+        // Chờ cả hai hoàn thành
+        try {
+            CompletableFuture.allOf(depFuture, arrFuture).join();
+        } catch (CompletionException e) {
+            // Giữ nguyên exception gốc (vd. LimitExceededException) cho caller
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+        propagate(iata, depFuture.join(), arrFuture.join());
+        return rebuildCache(iata, depFuture.join().changeCount() + arrFuture.join().changeCount(), startedAt);
+    }
+
+    /**
+     * Push the changes of a sync to the in-memory search index and the change event stream
+     * @param label synced airport, or the airports of a bulk batch
+     */
+    public void propagate(String label, SyncResult departures, SyncResult arrivals) {
+        searchIndex.apply(departures);
+        searchIndex.apply(arrivals);
+        eventPublisher.publish(label, departures, arrivals);
+    }
+
+    /**
+     * Reload an airport from the DB after its sync and write Redis + L1
+     * with a freshness window adapted to this airport
+     * @param changes rows changed by the sync (feeds the freshness policy)
+     * @param startedAt sync start (epoch millis), the refresh cost kept for XFetch
+     */
+    public CachedData rebuildCache(String iata, int changes, long startedAt) {
+        markWritten(iata);
+        freshnessPolicy.recordSync(iata, changes);
+
+        // Lấy từ DB
+        Map<String, List<FlightView>> result = loadFromDatabase(iata);
+        iataCodes.recordSync(iata, result.get(BoardViews.DEPARTURES).isEmpty()
+                && result.get(BoardViews.ARRIVALS).isEmpty());
+
+        FreshnessPolicy.Freshness freshness = freshnessPolicy.freshnessFor(iata);
+        long now = System.currentTimeMillis();
+        CacheMeta meta = new CacheMeta(now, freshness.staleSeconds(), freshness.ttlSeconds(), now - startedAt);
+        // Layout hash: chỉ ghi phần khác so với bản L1 trước sync
+        LocalFlightCache.Entry previous = localCache.get(iata);
+        redisService.saveAirport(iata, result, meta, previous != null ? previous.cached() : null);
+
+        CachedData cached = new CachedData(result, meta);
+        localCache.put(iata, cached);
+        return cached;
+    }
+
+    /*
+     * ===========================================================
+     * READ PATH - read-only projections, không load managed entity
+     * ============================================================
+     */
+
+    private Map<String, List<FlightView>> loadFromDatabase(String iata) {
+        String code = iata.toUpperCase();
+        Long writtenAt = lastWriteMillis.get(code);
+        if (writtenAt != null && System.currentTimeMillis() - writtenAt < readYourWritesMillis) {
+            // Vừa sync xong → replica có thể chưa có dữ liệu mới
+            return ReplicaRoutingDataSource.onPrimary(() -> loadViews(code));
+        }
+        return loadViews(code);
+    }
+
+    private Map<String, List<FlightView>> loadViews(String code) {
+        // Sort + status buckets một lần ở đây, request chỉ việc lookup
+        return BoardViews.materialize(
+                airlineRepository.findDepartureViews(code),
+                airlineRepository.findArrivalViews(code));
+    }
+
+    private void markWritten(String iata) {
+        lastWriteMillis.put(iata.toUpperCase(), System.currentTimeMillis());
+    }
+
+    /*
+     * ===========================================================
+     * CACHE INVALIDATION
+     * ============================================================
+     */
+
+    /**
+     * Drop the cached flights of one or more airports
+     */
+    public void clearCache(List<String> iatas) {
+        redisService.clearFlights(iatas);
+        iatas.forEach(localCache::invalidate);
+        log.info("🧹 Cache cleared for: {}", iatas);
+    }
+
+    /**
+     * Invalidate every airport by moving to a new cache generation
+     */
+    public void clearAllCache() {
+        redisService.clearAllFlights();
+        localCache.clear();
+    }
+
     /*
      * ===========================================================
      * CORE SYNC LOGIC
      * ============================================================
      */
 
-    @Transactional(isolation = Isolation.READ_COMMITTED) // Giảm isolation xuống READ_COMMITTED để giảm khóa, tăng concurrency
-    protected void syncFlights(String url, boolean isDeparture) {
-        List<Airline> apiFlights = fetchFromApi(url);
-        if (apiFlights.isEmpty()) return;
+    private SyncResult syncFlights(String iata, boolean isDeparture) {
+        // Phần DB bị giới hạn riêng: Postgres chậm không kéo theo toàn bộ worker/request.
+        // Giữ chỗ trước khi gọi AirLabs để không tốn quota cho dữ liệu sẽ bị bỏ
+        AdaptiveConcurrencyLimiter.Permit permit = dbSyncLimiter.tryAcquire();
+        if (permit == null) {
+            throw new LimitExceededException(dbSyncLimiter.getName());
+        }
+        List<Airline> apiFlights;
+        try {
+            apiFlights = fetchUpstream(iata, isDeparture);
+        } catch (RuntimeException e) {
+            permit.ignore();
+            throw e;
+        }
+        if (apiFlights.isEmpty()) {
+            permit.ignore();
+            return SyncResult.EMPTY;
+        }
+
+        // Chỉ thời gian DB được tính vào latency của limiter
+        permit.startClock();
+        try {
+            SyncResult result = applySync(apiFlights, isDeparture);
+            permit.success();
+            return result;
+        } catch (RuntimeException e) {
+            permit.dropped();
+            throw e;
+        }
+    }
+
+    /**
+     * Upstream half of a sync: AirLabs departures or arrivals of one airport, no DB
+     */
+    public List<Airline> fetchUpstream(String iata, boolean isDeparture) {
+        return fetchFromApi(buildUrl(isDeparture ? "dep_iata" : "arr_iata", iata));
+    }
+
+    /**
+     * DB half of a sync: diff an AirLabs snapshot (one airport or a batch of airports)
+     * against Postgres, write the changes and the delay rollups. Not limited here,
+     * callers bound the concurrency (dbSyncLimiter / bulk refresh DB pool).
+     *
+     * Runs in its own READ_COMMITTED transaction (syncTransaction, not @Transactional: syncFlights
+     * calls it on this, bypassing the proxy). Matching rows are loaded with SELECT ... FOR UPDATE,
+     * so a departures and an arrivals sync touching the same flight take their "previous" snapshot
+     * one after the other and the delay rollup deltas do not count the change twice.
+     */
+    public SyncResult applySync(List<Airline> apiFlights, boolean isDeparture) {
+        if (apiFlights.isEmpty()) return SyncResult.EMPTY;
 
         // Lấy các flight code để query DB (tối ưu bằng Set để tránh duplicate)
         Set<String> flightCodes = new HashSet<>();
@@ -157,8 +560,35 @@ public class AirlineService {
             }
         }
 
-        // Load từ DB
-        List<Airline> dbFlights = airlineRepository.findByFlightIataIn(flightCodes);
+        return syncTransaction.execute(status -> {
+            // Load từ DB + khóa row đến hết transaction
+            List<Airline> dbFlights = airlineRepository.findByFlightIataInForUpdate(flightCodes);
+            SyncResult result = diff(apiFlights, dbFlights, isDeparture);
+
+            // Batch save
+            if (!result.inserted().isEmpty()) {
+                airlineRepository.saveAll(result.inserted());
+            }
+            if (!result.updated().isEmpty()) {
+                airlineRepository.saveAll(result.updated());
+            }
+
+            // Xóa flight không còn trong API
+            if (!result.deleted().isEmpty()) {
+                airlineRepository.deleteAll(result.deleted());
+            }
+
+            // Rollup delay analytics theo delta, không quét lại bảng (cùng transaction)
+            delayRollups.apply(result);
+            return result;
+        });
+    }
+
+    /**
+     * Diff one AirLabs snapshot against the DB rows, no I/O.
+     * Changed rows are updated in place and returned as "updated".
+     */
+    SyncResult diff(List<Airline> apiFlights, List<Airline> dbFlights, boolean isDeparture) {
         Map<String, Airline> dbMap = new HashMap<>(dbFlights.size());
         for (Airline dbF : dbFlights) {
             String key = uniqueKey(dbF, isDeparture);
@@ -168,43 +598,23 @@ public class AirlineService {
         // Thu thập batch cho insert/update/delete để sử dụng saveAll/deleteAll
         List<Airline> toInsert = new ArrayList<>();
         List<Airline> toUpdate = new ArrayList<>();
+        List<Airline> previous = new ArrayList<>();
         Set<String> apiKeys = new HashSet<>(apiFlights.size());
 
         for (Airline apiF : apiFlights) {
             String key = uniqueKey(apiF, isDeparture);
             apiKeys.add(key);
 
-            try {
-                if (!dbMap.containsKey(key)) {
-                    toInsert.add(apiF);
-                } else {
-                    Airline existing = dbMap.get(key);
-                    if (isChanged(existing, apiF)) {
-                        updateEntity(existing, apiF);
-                        toUpdate.add(existing);
-                    }
-                }
-            } catch (DataIntegrityViolationException e) {
-                // Handle duplicate constraint (race condition) - ít xảy ra hơn với lock
-                Airline existing = isDeparture ?
-                        airlineRepository.findByFlightIataAndDepTime(apiF.getFlightIata(), apiF.getDepTime()) :
-                        airlineRepository.findByFlightIataAndArrTime(apiF.getFlightIata(), apiF.getArrTime());
-                if (existing != null && isChanged(existing, apiF)) {
-                    updateEntity(existing, apiF);
-                    toUpdate.add(existing);
-                }
+            Airline existing = dbMap.get(key);
+            if (existing == null) {
+                toInsert.add(apiF);
+            } else if (isChanged(existing, apiF)) {
+                previous.add(snapshot(existing));
+                updateEntity(existing, apiF);
+                toUpdate.add(existing);
             }
         }
 
-        // Batch save
-        if (!toInsert.isEmpty()) {
-            airlineRepository.saveAll(toInsert);
-        }
-        if (!toUpdate.isEmpty()) {
-            airlineRepository.saveAll(toUpdate);
-        }
-
-        // Xóa flight không còn trong API
         List<Airline> toDelete = new ArrayList<>();
         for (Airline dbF : dbFlights) {
             String key = uniqueKey(dbF, isDeparture);
@@ -212,9 +622,34 @@ public class AirlineService {
                 toDelete.add(dbF);
             }
         }
-        if (!toDelete.isEmpty()) {
-            airlineRepository.deleteAll(toDelete);
+
+        return new SyncResult(toInsert, toUpdate, toDelete, previous);
+    }
+
+    /**
+     * JIT warm-up over a bundled AirLabs payload: mapping, diff, projection and
+     * board views run exactly as in a sync, without AirLabs/DB/Redis I/O
+     */
+    public Map<String, List<FlightView>> warmUp(List<Map<String, Object>> sample, boolean isDeparture) {
+        List<Airline> fresh = new ArrayList<>();
+        List<Airline> known = new ArrayList<>();
+        for (Map<String, Object> m : sample) {
+            Airline a = mapToEntity(m);
+            if (a == null) continue;
+            fresh.add(a);
+            known.add(mapToEntity(m));
+        }
+        // Nửa số row "đã đổi" → đi qua nhánh update, row cuối coi như bị xóa
+        for (int i = 0; i < known.size(); i += 2) {
+            known.get(i).setStatus("warmup");
         }
+        diff(fresh.subList(0, Math.max(0, fresh.size() - 1)), known, isDeparture);
+
+        List<FlightView> views = new ArrayList<>(fresh.size());
+        for (Airline a : fresh) {
+            views.add(FlightView.from(a));
+        }
+        return BoardViews.materialize(views, views);
     }
 
     /*
@@ -246,6 +681,18 @@ public class AirlineService {
         }
     }
 
+    /**
+     * Open the upstream connection (DNS + TLS) before the first sync, keep-alive reuses it
+     */
+    public void warmUpstream() {
+        try {
+            restTemplate.headForHeaders(airlabsBaseUrl);
+        } catch (RestClientException e) {
+            // 4xx/405 vẫn có nghĩa là kết nối đã mở xong
+            log.debug("Upstream warm-up response: {}", e.getMessage());
+        }
+    }
+
     /*
      * ===========================================================
      * BUILD URL
@@ -289,7 +736,9 @@ public class AirlineService {
                 a.getArrGate(),
                 a.getArrActual(),
                 a.getStatus(),
-                a.getDelayed()
+                a.getDelayed(),
+                a.getDepTimeTs(),   // backfill timestamp cho các row cũ
+                a.getArrTimeTs()
         );
     }
 
@@ -306,6 +755,30 @@ public class AirlineService {
         old.setArrActual(fresh.getArrActual());
         old.setStatus(fresh.getStatus());
         old.setDelayed(fresh.getDelayed());
+        old.setDepTimeTs(fresh.getDepTimeTs());
+        old.setArrTimeTs(fresh.getArrTimeTs());
+    }
+
+    /**
+     * Detached copy of the values a row had before updateEntity (delay rollup deltas, change events)
+     */
+    private Airline snapshot(Airline a) {
+        Airline copy = new Airline();
+        copy.setAirlineIata(a.getAirlineIata());
+        copy.setFlightIata(a.getFlightIata());
+        copy.setDepIata(a.getDepIata());
+        copy.setDepTime(a.getDepTime());
+        copy.setArrIata(a.getArrIata());
+        copy.setArrTime(a.getArrTime());
+        copy.setDepGate(a.getDepGate());
+        copy.setDepActual(a.getDepActual());
+        copy.setArrGate(a.getArrGate());
+        copy.setArrActual(a.getArrActual());
+        copy.setStatus(a.getStatus());
+        copy.setDelayed(a.getDelayed());
+        copy.setDepTimeTs(a.getDepTimeTs());
+        copy.setArrTimeTs(a.getArrTimeTs());
+        return copy;
     }
 
     /*
@@ -314,7 +787,7 @@ public class AirlineService {
      * ============================================================
      */
 
-    private Airline mapToEntity(Map<String, Object> m) {
+    Airline mapToEntity(Map<String, Object> m) {
         try {
             String flightIata = (String) m.get("flight_iata");
             String depIata = (String) m.get("dep_iata");
@@ -334,12 +807,16 @@ public class AirlineService {
             a.setDepGate((String) m.get("dep_gate"));
             a.setDepTime((String) m.get("dep_time"));
             a.setDepActual((String) m.get("dep_actual"));
+            if (m.get("dep_time_ts") != null)
+                a.setDepTimeTs(((Number) m.get("dep_time_ts")).longValue());
 
             a.setArrIata(arrIata);
             a.setArrTerminal((String) m.get("arr_terminal"));
             a.setArrGate((String) m.get("arr_gate"));
             a.setArrTime((String) m.get("arr_time"));
             a.setArrActual((String) m.get("arr_actual"));
+            if (m.get("arr_time_ts") != null)
+                a.setArrTimeTs(((Number) m.get("arr_time_ts")).longValue());
 
             a.setStatus((String) m.get("status"));
 
@@ -358,23 +835,67 @@ public class AirlineService {
     }
 
     /**
-     * Wrapper class for cached data with timestamp
+     * Wrapper class for cached data with its metadata
      */
     public static class CachedData {
-        private final Map<String, List<Airline>> data;
-        private final long timestamp;
+        private final Map<String, List<FlightView>> data;
+        private final CacheMeta meta;
 
-        public CachedData(Map<String, List<Airline>> data, long timestamp) {
+        public CachedData(Map<String, List<FlightView>> data, CacheMeta meta) {
             this.data = data;
-            this.timestamp = timestamp;
+            this.meta = meta;
         }
 
-        public Map<String, List<Airline>> getData() {
+        public Map<String, List<FlightView>> getData() {
             return data;
         }
 
+        public CacheMeta getMeta() {
+            return meta;
+        }
+
         public long getAgeSeconds() {
-            return (System.currentTimeMillis() - timestamp) / 1000;
+            return (System.currentTimeMillis() - meta.timestamp()) / 1000;
+        }
+    }
+
+    /**
+     * Metadata stored next to a cached airport
+     * @param timestamp write time (epoch millis)
+     * @param staleSeconds age after which a background refresh is triggered
+     * @param ttlSeconds age after which the entry is no longer served
+     * @param computeMillis how long the refresh took (XFetch delta)
+     */
+    public record CacheMeta(long timestamp, int staleSeconds, int ttlSeconds, long computeMillis) {
+    }
+
+    /**
+     * Rows changed by one syncFlights call
+     * @param previous values of each updated row before the update, same order as updated
+     */
+    public record SyncResult(List<Airline> inserted, List<Airline> updated, List<Airline> deleted,
+                             List<Airline> previous) {
+        static final SyncResult EMPTY = new SyncResult(List.of(), List.of(), List.of(), List.of());
+
+        public int changeCount() {
+            return inserted.size() + updated.size() + deleted.size();
+        }
+
+        /**
+         * One result out of several syncs (bulk refresh retried per airport)
+         */
+        public static SyncResult merge(List<SyncResult> results) {
+            List<Airline> inserted = new ArrayList<>();
+            List<Airline> updated = new ArrayList<>();
+            List<Airline> deleted = new ArrayList<>();
+            List<Airline> previous = new ArrayList<>();
+            for (SyncResult r : results) {
+                inserted.addAll(r.inserted());
+                updated.addAll(r.updated());
+                deleted.addAll(r.deleted());
+                previous.addAll(r.previous());
+            }
+            return new SyncResult(inserted, updated, deleted, previous);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,199 @@
+package com.tanvan.ecommerce.services;
+
+import com.tanvan.ecommerce.dto.FlightView;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * Ready-to-serve board views of an airport, built once per cache refresh.
+ *
+ * The cached map holds:
+ *  - departures / arrivals           : sorted by effective time (actual, else scheduled + delayed)
+ *  - departures.delayed / .cancelled : status buckets, same order
+ *  - arrivals.delayed / .cancelled
+ *
+ * "Next N flights" is a binary search over the sorted list, no sorting per request.
+ */
+public final class BoardViews {
+
+    public static final String DEPARTURES = "departures";
+    public static final String ARRIVALS = "arrivals";
+
+    public static final String VIEW_ALL = "all";
+    public static final String VIEW_NEXT = "next";
+    public static final String VIEW_DELAYED = "delayed";
+    public static final String VIEW_CANCELLED = "cancelled";
+
+    // Ngưỡng on-time phổ biến: trễ từ 15 phút trở lên
+    static final int DELAY_THRESHOLD_MINUTES = 15;
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private BoardViews() {
+    }
+
+    /**
+     * Sort both lists and derive the status buckets
+     */
+    public static Map<String, List<FlightView>> materialize(List<FlightView> departures, List<FlightView> arrivals) {
+        List<FlightView> sortedDepartures = sorted(departures, true);
+        List<FlightView> sortedArrivals = sorted(arrivals, false);
+
+        Map<String, List<FlightView>> views = new HashMap<>();
+        views.put(DEPARTURES, sortedDepartures);
+        views.put(ARRIVALS, sortedArrivals);
+        views.put(key(DEPARTURES, VIEW_DELAYED), filter(sortedDepartures, VIEW_DELAYED));
+        views.put(key(DEPARTURES, VIEW_CANCELLED), filter(sortedDepartures, VIEW_CANCELLED));
+        views.put(key(ARRIVALS, VIEW_DELAYED), filter(sortedArrivals, VIEW_DELAYED));
+        views.put(key(ARRIVALS, VIEW_CANCELLED), filter(sortedArrivals, VIEW_CANCELLED));
+        return views;
+    }
+
+    /**
+     * Only the raw departures/arrivals lists (the /api/flights response shape)
+     */
+    public static Map<String, List<FlightView>> departuresAndArrivals(Map<String, List<FlightView>> views) {
+        Map<String, List<FlightView>> result = new HashMap<>();
+        result.put(DEPARTURES, views.getOrDefault(DEPARTURES, List.of()));
+        result.put(ARRIVALS, views.getOrDefault(ARRIVALS, List.of()));
+        return result;
+    }
+
+    /**
+     * One view of the board
+     * @param type departures | arrivals
+     * @param view all | next | delayed | cancelled
+     * @param limit max rows (next window size)
+     */
+    public static List<FlightView> select(Map<String, List<FlightView>> views, String type, String view, int limit) {
+        boolean departure = DEPARTURES.equals(type);
+        List<FlightView> flights = switch (view) {
+            case VIEW_ALL -> views.getOrDefault(type, List.of());
+            case VIEW_NEXT -> nextFrom(views.getOrDefault(type, List.of()), departure,
+                    System.currentTimeMillis() / 1000);
+            case VIEW_DELAYED, VIEW_CANCELLED -> views.getOrDefault(key(type, view), List.of());
+            default -> throw new IllegalArgumentException("Unknown view: " + view);
+        };
+        return flights.size() > limit ? flights.subList(0, limit) : flights;
+    }
+
+    /**
+     * Departures towards one destination, in board order
+     */
+    public static List<FlightView> route(Map<String, List<FlightView>> views, String destination) {
+        List<FlightView> result = new ArrayList<>();
+        for (FlightView f : views.getOrDefault(DEPARTURES, List.of())) {
+            if (destination.equalsIgnoreCase(f.arrIata())) result.add(f);
+        }
+        return result;
+    }
+
+    public static boolean isValidType(String type) {
+        return DEPARTURES.equals(type) || ARRIVALS.equals(type);
+    }
+
+    public static boolean isValidView(String view) {
+        return VIEW_ALL.equals(view) || VIEW_NEXT.equals(view)
+                || VIEW_DELAYED.equals(view) || VIEW_CANCELLED.equals(view);
+    }
+
+    /* ==================================================================
+       PRIVATE METHODS
+    ================================================================== */
+
+    private static String key(String type, String view) {
+        return type + "." + view;
+    }
+
+    /**
+     * Flights whose effective time is now or later (binary search, list is sorted).
+     * The list is sorted by local time and not every row has an epoch timestamp (legacy rows),
+     * so the search runs on the same local minutes, "now" being shifted by the airport's
+     * UTC offset taken from a row that has both. No such row → the whole list.
+     */
+    static List<FlightView> nextFrom(List<FlightView> sorted, boolean departure, long nowEpochSeconds) {
+        Long offsetMinutes = localOffsetMinutes(sorted, departure);
+        if (offsetMinutes == null) return sorted;
+        long nowLocal = Math.floorDiv(nowEpochSeconds, 60) + offsetMinutes;
+
+        int lo = 0;
+        int hi = sorted.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (effectiveLocalMinutes(sorted.get(mid), departure) < nowLocal) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return sorted.subList(lo, sorted.size());
+    }
+
+    /**
+     * Local minus UTC minutes of the airport, null when no row has a timestamp
+     */
+    private static Long localOffsetMinutes(List<FlightView> flights, boolean departure) {
+        for (FlightView f : flights) {
+            Long ts = departure ? f.depTimeTs() : f.arrTimeTs();
+            long local = localMinutes(departure ? f.depTime() : f.arrTime());
+            if (ts != null && local != Long.MAX_VALUE) return local - Math.floorDiv(ts, 60);
+        }
+        return null;
+    }
+
+    private static List<FlightView> sorted(List<FlightView> flights, boolean departure) {
+        if (flights == null) return new ArrayList<>();
+        List<FlightView> copy = new ArrayList<>(flights);
+        // Local times of one airport sort the same way as instants
+        copy.sort(Comparator.comparingLong(f -> effectiveLocalMinutes(f, departure)));
+        return copy;
+    }
+
+    private static List<FlightView> filter(List<FlightView> sorted, String bucket) {
+        List<FlightView> result = new ArrayList<>();
+        for (FlightView f : sorted) {
+            boolean match = VIEW_CANCELLED.equals(bucket) ? isCancelled(f) : isDelayed(f);
+            if (match) result.add(f);
+        }
+        return result;
+    }
+
+    static boolean isCancelled(FlightView f) {
+        return "cancelled".equalsIgnoreCase(f.status());
+    }
+
+    static boolean isDelayed(FlightView f) {
+        return !isCancelled(f)
+                && ("delayed".equalsIgnoreCase(f.status())
+                || (f.delayed() != null && f.delayed() >= DELAY_THRESHOLD_MINUTES));
+    }
+
+    /**
+     * Actual time if known, otherwise scheduled + delayed, as local minutes since epoch
+     */
+    private static long effectiveLocalMinutes(FlightView f, boolean departure) {
+        String actual = departure ? f.depActual() : f.arrActual();
+        long actualMinutes = localMinutes(actual);
+        if (actualMinutes != Long.MAX_VALUE) return actualMinutes;
+
+        long scheduled = localMinutes(departure ? f.depTime() : f.arrTime());
+        if (scheduled == Long.MAX_VALUE) return scheduled; // không có giờ → cuối danh sách
+        return f.delayed() != null ? scheduled + f.delayed() : scheduled;
+    }
+
+    /**
+     * "2021-07-14 19:53" → minutes since epoch (time zone agnostic), Long.MAX_VALUE when missing
+     */
+    static long localMinutes(String time) {
+        if (time == null || time.length() < 16) return Long.MAX_VALUE;
+        try {
+            return LocalDateTime.parse(time.substring(0, 16), TIME_FORMAT).toEpochSecond(ZoneOffset.UTC) / 60;
+        } catch (DateTimeParseException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.tanvan.ecommerce.services;
+
+import com.tanvan.ecommerce.config.BulkRefreshProperties;
+import com.tanvan.ecommerce.dto.BulkRefreshStatus;
+import com.tanvan.ecommerce.entity.Airline;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admin-triggered refresh of a whole airport group (region, alliance hubs...).
+ *
+ *  - upstream: every airport's departures + arrivals are fetched on a dedicated fork-join pool
+ *    (app.bulk-refresh.upstream-parallelism), not the common pool
+ *  - DB: airports are grouped in batches of batch-size; as soon as a batch is fetched, one diff
+ *    + batch write covers all its airports, on a separate pool (db-parallelism)
+ *  - cache: each airport is then reloaded and written to Redis/L1 like a normal refresh
+ *
+ * Airports whose refresh lock is held (refresh already running) are skipped.
+ * Jobs run in the background; progress and per-airport timings are kept for the last max-jobs jobs.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BulkRefreshService {
+
+    private final AirlineService airlineService;
+    private final RedisService redisService;
+    private final BulkRefreshProperties properties;
+
+    private ForkJoinPool upstreamPool;
+    private ForkJoinPool dbPool;
+
+    // id → job, cũ nhất bị bỏ khi vượt max-jobs
+    private final Map<String, Job> jobs = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Job> eldest) {
+            return size() > properties.getMaxJobs();
+        }
+    });
+
+    @PostConstruct
+    void start() {
+        upstreamPool = new ForkJoinPool(properties.getUpstreamParallelism());
+        dbPool = new ForkJoinPool(properties.getDbParallelism());
+    }
+
+    @PreDestroy
+    void stop() {
+        upstreamPool.shutdownNow();
+        dbPool.shutdownNow();
+    }
+
+    public Map<String, List<String>> getGroups() {
+        return properties.getGroups();
+    }
+
+    /**
+     * Start refreshing a configured group, returns immediately
+     */
+    public BulkRefreshStatus start(String group) {
+        List<String> airports = properties.getGroups().get(group);
+        if (airports == null || airports.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown airport group: " + group);
+        }
+        Set<String> codes = new LinkedHashSet<>();
+        for (String airport : airports) {
+            if (!airport.isBlank()) codes.add(airport.trim().toUpperCase());
+        }
+
+        Job job = new Job(UUID.randomUUID().toString(), group, codes);
+        jobs.put(job.id, job);
+        log.info("🚀 Bulk refresh {} started: group {} ({} airports)", job.id, group, codes.size());
+
+        List<String> ordered = new ArrayList<>(codes);
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        for (int i = 0; i < ordered.size(); i += properties.getBatchSize()) {
+            List<CompletableFuture<Fetched>> fetches = ordered
+                    .subList(i, Math.min(ordered.size(), i + properties.getBatchSize()))
+                    .stream().map(iata -> fetch(job, iata)).toList();
+            batches.add(CompletableFuture.allOf(fetches.toArray(CompletableFuture[]::new))
+                    .thenRunAsync(() -> apply(fetches.stream().map(CompletableFuture::join)
+                            .filter(Objects::nonNull).toList()), dbPool));
+        }
+        CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)).whenComplete((v, e) -> {
+            job.finishedAt = System.currentTimeMillis();
+            log.info("✅ Bulk refresh {} completed in {} ms", job.id, job.finishedAt - job.startedAt);
+        });
+        return job.status();
+    }
+
+    public BulkRefreshStatus getStatus(String id) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown bulk refresh job: " + id);
+        }
+        return job.status();
+    }
+
+    /*
+     * ===========================================================
+     * UPSTREAM - lock + AirLabs departures/arrivals song song
+     * ============================================================
+     */
+
+    private CompletableFuture<Fetched> fetch(Job job, String iata) {
+        Progress p = job.airports.get(iata);
+        String lockKey = redisService.flightsLockKey(iata);
+        return CompletableFuture.supplyAsync(() -> redisService.acquireLock(lockKey, 120), upstreamPool)
+                .thenCompose(token -> {
+                    if (token == null) {
+                        p.finish("skipped", "refresh already in progress");
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    long startedAt = System.currentTimeMillis();
+                    p.state = "fetching";
+                    CompletableFuture<List<Airline>> dep = CompletableFuture.supplyAsync(
+                            () -> airlineService.fetchUpstream(iata, true), upstreamPool);
+                    CompletableFuture<List<Airline>> arr = CompletableFuture.supplyAsync(
+                            () -> airlineService.fetchUpstream(iata, false), upstreamPool);
+                    return dep.thenCombine(arr, (d, a) -> {
+                        p.fetchMillis = System.currentTimeMillis() - startedAt;
+                        p.state = "syncing";
+                        return new Fetched(iata, p, lockKey, token, d, a, startedAt);
+                    }).exceptionally(e -> {
+                        redisService.releaseLock(lockKey, token);
+                        p.finish("failed", rootMessage(e));
+                        return null;
+                    });
+                })
+                .exceptionally(e -> {
+                    // Redis lỗi khi lấy lock
+                    p.finish("failed", rootMessage(e));
+                    return null;
+                });
+    }
+
+    /*
+     * ===========================================================
+     * DB - một lần diff/ghi cho cả batch, rồi rebuild cache từng airport
+     * ============================================================
+     */
+
+    private void apply(List<Fetched> batch) {
+        if (batch.isEmpty()) return;
+        try {
+            long startedAt = System.currentTimeMillis();
+            AirlineService.SyncResult dep = syncSide(batch, true);
+            AirlineService.SyncResult arr = syncSide(batch, false);
+            airlineService.propagate(String.join(",", batch.stream().map(Fetched::iata).toList()), dep, arr);
+            long dbMillis = System.currentTimeMillis() - startedAt;
+
+            for (Fetched f : batch) {
+                Progress p = f.progress();
+                if (p.isFinished()) continue; // airport lỗi khi retry riêng
+                p.dbMillis = dbMillis;
+                p.changes = changesOf(f.iata(), dep, arr);
+                long cacheStartedAt = System.currentTimeMillis();
+                try {
+                    airlineService.rebuildCache(f.iata(), p.changes, f.startedAt());
+                    p.cacheMillis = System.currentTimeMillis() - cacheStartedAt;
+                    p.finish("done", null);
+                } catch (RuntimeException e) {
+                    log.error("❌ Bulk refresh cache rebuild failed: FLIGHTS:{} - {}", f.iata(), e.getMessage());
+                    p.finish("failed", e.getMessage());
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("❌ Bulk refresh DB sync failed for {} airports - {}", batch.size(), e.getMessage(), e);
+            for (Fetched f : batch) {
+                if (!f.progress().isFinished()) f.progress().finish("failed", e.getMessage());
+            }
+        } finally {
+            for (Fetched f : batch) {
+                redisService.releaseLock(f.lockKey(), f.token());
+            }
+        }
+    }
+
+    /**
+     * One diff + write for the departures (or arrivals) of the whole batch.
+     * Two batches running in parallel can both insert a flight between airports of the group
+     * (departures of one, arrivals of the other): the loser hits unique_departure/unique_arrival
+     * and its transaction rolls back. The other batch has committed by then, so the batch is
+     * retried airport by airport, each now seeing that row as existing.
+     */
+    private AirlineService.SyncResult syncSide(List<Fetched> batch, boolean isDeparture) {
+        List<Airline> rows = new ArrayList<>();
+        for (Fetched f : batch) {
+            rows.addAll(isDeparture ? f.departures() : f.arrivals());
+        }
+        try {
+            return airlineService.applySync(rows, isDeparture);
+        } catch (DataIntegrityViolationException e) {
+            if (batch.size() == 1) throw e;
+            log.warn("⚠️ Bulk refresh batch conflict ({} airports, {}), retrying per airport",
+                    batch.size(), isDeparture ? "departures" : "arrivals");
+        }
+
+        List<AirlineService.SyncResult> results = new ArrayList<>(batch.size());
+        for (Fetched f : batch) {
+            if (f.progress().isFinished()) continue;
+            try {
+                results.add(airlineService.applySync(isDeparture ? f.departures() : f.arrivals(), isDeparture));
+            } catch (RuntimeException e) {
+                log.error("❌ Bulk refresh DB sync failed: FLIGHTS:{} - {}", f.iata(), e.getMessage());
+                f.progress().finish("failed", e.getMessage());
+            }
+        }
+        return AirlineService.SyncResult.merge(results);
+    }
+
+    /**
+     * Changed rows touching an airport (departing from or arriving at it)
+     */
+    private static int changesOf(String iata, AirlineService.SyncResult... results) {
+        int count = 0;
+        for (AirlineService.SyncResult result : results) {
+            for (List<Airline> rows : List.of(result.inserted(), result.updated(), result.deleted())) {
+                for (Airline a : rows) {
+                    if (iata.equals(a.getDepIata()) || iata.equals(a.getArrIata())) count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static String rootMessage(Throwable e) {
+        while (e.getCause() != null) e = e.getCause();
+        return e.getMessage();
+    }
+
+    /*
+     * ===========================================================
+     * JOB STATE
+     * ============================================================
+     */
+
+    private record Fetched(String iata, Progress progress, String lockKey, String token,
+                           List<Airline> departures, List<Airline> arrivals, long startedAt) {
+    }
+
+    private static final class Progress {
+        final String iata;
+        volatile String state = "queued";
+        volatile Long fetchMillis;
+        volatile Long dbMillis;
+        volatile Long cacheMillis;
+        volatile Integer changes;
+        volatile String error;
+        private final Job job;
+
+        Progress(String iata, Job job) {
+            this.iata = iata;
+            this.job = job;
+        }
+
+        void finish(String finalState, String message) {
+            error = message;
+            state = finalState;
+            switch (finalState) {
+                case "done" -> job.done.incrementAndGet();
+                case "skipped" -> job.skipped.incrementAndGet();
+                default -> job.failed.incrementAndGet();
+            }
+        }
+
+        boolean isFinished() {
+            return "done".equals(state) || "failed".equals(state) || "skipped".equals(state);
+        }
+    }
+
+    private static final class Job {
+        final String id;
+        final String group;
+        final long startedAt = System.currentTimeMillis();
+        volatile Long finishedAt;
+        final Map<String, Progress> airports = new LinkedHashMap<>();
+        final AtomicInteger done = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicInteger skipped = new AtomicInteger();
+
+        Job(String id, String group, Collection<String> codes) {
+            this.id = id;
+            this.group = group;
+            for (String code : codes) {
+                airports.put(code, new Progress(code, this));
+            }
+        }
+
+        BulkRefreshStatus status() {
+            List<BulkRefreshStatus.Airport> rows = new ArrayList<>(airports.size());
+            for (Progress p : airports.values()) {
+                rows.add(new BulkRefreshStatus.Airport(p.iata, p.state, p.fetchMillis, p.dbMillis,
+                        p.cacheMillis, p.changes, p.error));
+            }
+            Long finished = finishedAt;
+            long end = finished != null ? finished : System.currentTimeMillis();
+            return new BulkRefreshStatus(id, group, finished != null ? "completed" : "running",
+                    airports.size(), done.get(), failed.get(), skipped.get(), startedAt, end - startedAt, rows);
+        }
+    }
+}
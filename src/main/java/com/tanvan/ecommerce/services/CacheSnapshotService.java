@@ -0,0 +1,159 @@
+package com.tanvan.ecommerce.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Warm-start snapshot of the L1 cache.
+ *
+ * The compact boards are written to local disk periodically and on graceful shutdown
+ * (temp file + atomic rename, a crash never leaves a half-written snapshot). On startup
+ * the file is memory-mapped and loaded before the app reports ready; restored boards
+ * are served as stale data and refreshed in the background on first request.
+ *
+ * Layout (big endian): magic, version, writtenAt, dictionary strings,
+ * then per airport: iata, CacheMeta, CompactFlightTable.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CacheSnapshotService {
+
+    private static final int MAGIC = 0x464C5331; // "FLS1"
+    private static final int VERSION = 2; // 2: thêm cột id
+
+    private final LocalFlightCache localCache;
+
+    @Value("${app.cache.snapshot.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.cache.snapshot.path:data/l1-snapshot.bin}")
+    private Path path;
+
+    // Snapshot cũ hơn ngưỡng này không còn đáng phục vụ
+    @Value("${app.cache.snapshot.max-age-seconds:3600}")
+    private long maxAgeSeconds;
+
+    @PostConstruct
+    public void restore() {
+        if (!enabled || !Files.isReadable(path)) return;
+
+        long startedAt = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                log.warn("⚠️ Ignoring snapshot with unknown format: {}", path);
+                return;
+            }
+            long writtenAt = in.getLong();
+            if (System.currentTimeMillis() - writtenAt > maxAgeSeconds * 1000) {
+                log.info("⏭️ Snapshot too old, skipped: {}", path);
+                return;
+            }
+
+            CodeDictionary dictionary = new CodeDictionary();
+            int dictionarySize = in.getInt();
+            for (int i = 0; i < dictionarySize; i++) {
+                dictionary.intern(CompactFlightTable.readString(in));
+            }
+
+            // Đọc hết rồi mới nạp vào L1: snapshot hỏng thì bỏ toàn bộ, không nạp một nửa
+            int count = in.getInt();
+            List<String> iatas = new ArrayList<>();
+            List<AirlineService.CacheMeta> metas = new ArrayList<>();
+            List<CompactFlightTable> tables = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                iatas.add(CompactFlightTable.readString(in));
+                metas.add(new AirlineService.CacheMeta(in.getLong(), in.getInt(), in.getInt(), in.getLong()));
+                tables.add(CompactFlightTable.readFrom(in, dictionary));
+            }
+            localCache.useDictionary(dictionary);
+            for (int i = 0; i < iatas.size(); i++) {
+                localCache.restore(iatas.get(i), tables.get(i), metas.get(i));
+            }
+            log.info("♻️ Restored {} airports from snapshot in {} ms",
+                    count, (System.nanoTime() - startedAt) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            // Snapshot chỉ là tối ưu khởi động, không bao giờ làm app fail
+            log.warn("⚠️ Failed to restore snapshot {}, discarded: {}", path, e.toString());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.cache.snapshot.interval-ms:60000}",
+            initialDelayString = "${app.cache.snapshot.interval-ms:60000}")
+    public void scheduledWrite() {
+        write();
+    }
+
+    @PreDestroy
+    public void write() {
+        if (!enabled) return;
+
+        Map<String, LocalFlightCache.Entry> entries = localCache.entries();
+        if (entries.isEmpty()) return;
+
+        // Ghi thẳng các cột compact, không decode ra FlightView. Mọi bảng phải dùng chung một
+        // dictionary: bảng tạo trước lần thay dictionary được dịch id sang dictionary hiện tại
+        CodeDictionary dictionary = localCache.currentDictionary();
+        List<String> iatas = new ArrayList<>();
+        List<AirlineService.CacheMeta> metas = new ArrayList<>();
+        List<CompactFlightTable> tables = new ArrayList<>();
+        entries.forEach((iata, entry) -> {
+            iatas.add(iata);
+            metas.add(entry.meta());
+            tables.add(entry.table().withDictionary(dictionary));
+        });
+        // Đọc size sau khi đã có đủ bảng: id chỉ tăng, mọi id của các bảng trên đều < size
+        int dictionarySize = dictionary.size();
+
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, "l1-snapshot", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(System.currentTimeMillis());
+                out.writeInt(dictionarySize);
+                for (int i = 0; i < dictionarySize; i++) {
+                    CompactFlightTable.writeString(out, dictionary.get(i));
+                }
+                out.writeInt(tables.size());
+                for (int i = 0; i < tables.size(); i++) {
+                    AirlineService.CacheMeta meta = metas.get(i);
+                    CompactFlightTable.writeString(out, iatas.get(i));
+                    out.writeLong(meta.timestamp());
+                    out.writeInt(meta.staleSeconds());
+                    out.writeInt(meta.ttlSeconds());
+                    out.writeLong(meta.computeMillis());
+                    tables.get(i).writeTo(out);
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("💾 Snapshot written: {} airports → {}", tables.size(), path);
+        } catch (IOException e) {
+            log.warn("⚠️ Failed to write snapshot {}: {}", path, e.getMessage());
+        }
+    }
+}
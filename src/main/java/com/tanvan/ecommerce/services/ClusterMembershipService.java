@@ -0,0 +1,157 @@
+package com.tanvan.ecommerce.services;
+
+import com.tanvan.ecommerce.utils.ConsistentHashRing;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Cluster membership and refresh ownership.
+ *
+ * Every instance heartbeats into a Redis sorted set (score = last heartbeat).
+ * Live members form a consistent-hash ring, each airport has exactly one owner,
+ * and only the owner refreshes it. Other nodes forward refresh requests to the
+ * owner's pub/sub channel instead of calling AirLabs themselves.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ClusterMembershipService {
+
+    private static final String NODES_KEY = "CLUSTER:NODES";
+    private static final String REFRESH_CHANNEL_PREFIX = "CLUSTER:REFRESH:";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    @Value("${app.cluster.node-id:}")
+    private String configuredNodeId;
+
+    @Value("${app.cluster.node-ttl-ms:15000}")
+    private long nodeTtlMillis;
+
+    @Value("${app.cluster.virtual-nodes:128}")
+    private int virtualNodes;
+
+    private String nodeId;
+    private volatile Set<String> members = Set.of();
+    private volatile ConsistentHashRing ring = new ConsistentHashRing(Set.of(), 0);
+    private volatile Consumer<String> refreshHandler = iata -> { };
+
+    @PostConstruct
+    public void join() {
+        nodeId = configuredNodeId.isBlank() ? defaultNodeId() : configuredNodeId;
+        listenerContainer.addMessageListener(
+                (message, pattern) -> handleRefreshRequest(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(REFRESH_CHANNEL_PREFIX + nodeId));
+        heartbeat();
+        log.info("🌐 Node {} joined the cluster ({} member(s))", nodeId, members.size());
+    }
+
+    @PreDestroy
+    public void leave() {
+        try {
+            stringRedisTemplate.opsForZSet().remove(NODES_KEY, nodeId);
+            log.info("🌐 Node {} left the cluster", nodeId);
+        } catch (Exception e) {
+            log.warn("Cannot deregister node {}: {}", nodeId, e.getMessage());
+        }
+    }
+
+    /**
+     * Heartbeat + prune dead members + rebuild the ring when membership changed
+     */
+    @Scheduled(fixedDelayString = "${app.cluster.heartbeat-ms:5000}", initialDelayString = "${app.cluster.heartbeat-ms:5000}")
+    public void heartbeat() {
+        try {
+            long now = System.currentTimeMillis();
+            stringRedisTemplate.opsForZSet().add(NODES_KEY, nodeId, now);
+            stringRedisTemplate.opsForZSet().removeRangeByScore(NODES_KEY, 0, now - nodeTtlMillis);
+
+            Set<String> live = stringRedisTemplate.opsForZSet().range(NODES_KEY, 0, -1);
+            Set<String> current = new TreeSet<>(live != null ? live : Set.of());
+            current.add(nodeId);
+
+            if (!current.equals(members)) {
+                ring = new ConsistentHashRing(current, virtualNodes);
+                log.info("🌐 Cluster membership changed: {} → {}", members, current);
+                members = Set.copyOf(current);
+            }
+        } catch (Exception e) {
+            log.warn("Cluster heartbeat failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Owner node of an airport, this node when the ring is unknown
+     */
+    public String ownerOf(String iata) {
+        String owner = ring.ownerOf(iata.toUpperCase());
+        return owner != null ? owner : nodeId;
+    }
+
+    public boolean isOwner(String iata) {
+        return nodeId.equals(ownerOf(iata));
+    }
+
+    /**
+     * Forward a refresh to the owner node. Returns false when it could not be delivered.
+     */
+    public boolean delegateRefresh(String iata) {
+        String owner = ownerOf(iata);
+        try {
+            Long receivers = stringRedisTemplate.convertAndSend(REFRESH_CHANNEL_PREFIX + owner, iata.toUpperCase());
+            if (receivers != null && receivers > 0) {
+                log.debug("➡️ Refresh {} delegated to {}", iata, owner);
+                return true;
+            }
+        } catch (Exception e) {
+            log.warn("Cannot delegate refresh {} to {}: {}", iata, owner, e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Handler executed when another node asks us to refresh an airport we own
+     */
+    public void onRefreshRequest(Consumer<String> handler) {
+        this.refreshHandler = handler;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public Set<String> getMembers() {
+        return members;
+    }
+
+    private void handleRefreshRequest(String iata) {
+        log.debug("⬅️ Refresh {} requested by another node", iata);
+        refreshHandler.accept(iata);
+    }
+
+    private String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,44 @@
+package com.tanvan.ecommerce.services;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only string ↔ int dictionary shared by the compact L1 tables.
+ * Airport, airline, status, terminal and gate values repeat across every airport,
+ * so each distinct value is kept once for the whole node.
+ */
+final class CodeDictionary {
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[1024];
+    private volatile int size;
+
+    int intern(String value) {
+        Integer id = ids.get(value);
+        if (id != null) return id;
+        synchronized (this) {
+            id = ids.get(value);
+            if (id != null) return id;
+            int next = size;
+            String[] current = values;
+            if (next == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[next] = value;
+            values = current;
+            size = next + 1;
+            ids.put(value, next);
+            return next;
+        }
+    }
+
+    String get(int id) {
+        return values[id];
+    }
+
+    int size() {
+        return size;
+    }
+}
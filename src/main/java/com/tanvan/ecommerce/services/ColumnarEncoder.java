@@ -0,0 +1,110 @@
+package com.tanvan.ecommerce.services;
+
+import com.tanvan.ecommerce.dto.ColumnarFlights;
+import com.tanvan.ecommerce.dto.FlightView;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Dictionary-encodes flight lists into columns.
+ * Airport, airline, status, terminal and gate values repeat on almost every row,
+ * so each distinct string is written once in a shared dictionary and rows carry ints.
+ */
+final class ColumnarEncoder {
+
+    private static final Map<String, Function<FlightView, String>> STRING_COLUMNS = new LinkedHashMap<>();
+    private static final Map<String, Function<FlightView, Integer>> NUMBER_COLUMNS = new LinkedHashMap<>();
+    private static final Map<String, Function<FlightView, Long>> TIMESTAMP_COLUMNS = new LinkedHashMap<>();
+
+    static {
+        STRING_COLUMNS.put("id", FlightView::id);
+        STRING_COLUMNS.put("flightNumber", FlightView::flightNumber);
+        STRING_COLUMNS.put("flightIata", FlightView::flightIata);
+        STRING_COLUMNS.put("airlineIata", FlightView::airlineIata);
+        STRING_COLUMNS.put("depIata", FlightView::depIata);
+        STRING_COLUMNS.put("depTerminal", FlightView::depTerminal);
+        STRING_COLUMNS.put("depGate", FlightView::depGate);
+        STRING_COLUMNS.put("depTime", FlightView::depTime);
+        STRING_COLUMNS.put("depActual", FlightView::depActual);
+        STRING_COLUMNS.put("arrIata", FlightView::arrIata);
+        STRING_COLUMNS.put("arrTerminal", FlightView::arrTerminal);
+        STRING_COLUMNS.put("arrGate", FlightView::arrGate);
+        STRING_COLUMNS.put("arrTime", FlightView::arrTime);
+        STRING_COLUMNS.put("arrActual", FlightView::arrActual);
+        STRING_COLUMNS.put("status", FlightView::status);
+
+        NUMBER_COLUMNS.put("duration", FlightView::duration);
+        NUMBER_COLUMNS.put("delayed", FlightView::delayed);
+
+        TIMESTAMP_COLUMNS.put("depTimeTs", FlightView::depTimeTs);
+        TIMESTAMP_COLUMNS.put("arrTimeTs", FlightView::arrTimeTs);
+    }
+
+    private final Set<String> fields;
+    private final Map<String, Integer> index = new HashMap<>();
+    private final List<String> dictionary = new ArrayList<>();
+
+    /**
+     * @param fields columns to encode, null = all
+     */
+    ColumnarEncoder(Set<String> fields) {
+        this.fields = fields;
+    }
+
+    List<String> dictionary() {
+        return dictionary;
+    }
+
+    ColumnarFlights encode(List<FlightView> flights) {
+        int rows = flights.size();
+        Map<String, int[]> codes = new LinkedHashMap<>();
+        Map<String, int[]> numbers = new LinkedHashMap<>();
+        Map<String, long[]> timestamps = new LinkedHashMap<>();
+
+        STRING_COLUMNS.forEach((name, getter) -> {
+            if (!selected(name)) return;
+            int[] column = new int[rows];
+            for (int i = 0; i < rows; i++) {
+                column[i] = intern(getter.apply(flights.get(i)));
+            }
+            codes.put(name, column);
+        });
+
+        NUMBER_COLUMNS.forEach((name, getter) -> {
+            if (!selected(name)) return;
+            int[] column = new int[rows];
+            for (int i = 0; i < rows; i++) {
+                Integer value = getter.apply(flights.get(i));
+                column[i] = value != null ? value : Integer.MIN_VALUE;
+            }
+            numbers.put(name, column);
+        });
+
+        TIMESTAMP_COLUMNS.forEach((name, getter) -> {
+            if (!selected(name)) return;
+            long[] column = new long[rows];
+            for (int i = 0; i < rows; i++) {
+                Long value = getter.apply(flights.get(i));
+                column[i] = value != null ? value : Long.MIN_VALUE;
+            }
+            timestamps.put(name, column);
+        });
+
+        return new ColumnarFlights(rows, codes, numbers, timestamps);
+    }
+
+    private boolean selected(String name) {
+        return fields == null || fields.contains(name);
+    }
+
+    private int intern(String value) {
+        if (value == null) return -1;
+        Integer existing = index.get(value);
+        if (existing != null) return existing;
+        int id = dictionary.size();
+        dictionary.add(value);
+        index.put(value, id);
+        return id;
+    }
+}
@@ -0,0 +1,392 @@
+package com.tanvan.ecommerce.services;
+
+import com.tanvan.ecommerce.dto.FlightView;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * Read-side, struct-of-arrays copy of one airport board for the L1 cache.
+ *
+ * Every distinct flight is one row of int columns:
+ *  - codes (airport, airline, status, terminal, gate, flight number): {@link CodeDictionary} ids, -1 = null
+ *  - local times "yyyy-MM-dd HH:mm" and *_ts: epoch minutes, values that do not
+ *    round-trip at minute precision are kept as -1 - dictionary id
+ *  - duration / delayed: raw ints
+ *  - id: kept as is (unique per row, nothing to share through the dictionary)
+ * Named lists (departures, arrivals, status buckets) are row indexes into the table,
+ * so a flight shared by several views is stored once.
+ *
+ * {@link #lists()} returns lazy lists that build FlightView objects only for the rows read.
+ * Decoded rows are not retained: the table is the only copy of the board held in memory.
+ * {@link #writeTo} / {@link #readFrom} give the binary form used by the warm-start snapshot.
+ */
+final class CompactFlightTable {
+
+    private static final int NULL = Integer.MIN_VALUE;
+    private static final int NULL_CODE = -1;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final int COLUMNS = 18;
+    // Vị trí cột trong columns(): id dictionary / giờ + timestamp (âm = id dictionary)
+    private static final int[] CODE_COLUMNS = {0, 1, 2, 3, 4, 5, 9, 10, 11, 15};
+    private static final int[] TIME_COLUMNS = {6, 7, 8, 12, 13, 14};
+
+    private final CodeDictionary dictionary;
+    private final int rows;
+
+    private final String[] id;
+    private final int[] flightNumber;
+    private final int[] flightIata;
+    private final int[] airlineIata;
+    private final int[] depIata;
+    private final int[] depTerminal;
+    private final int[] depGate;
+    private final int[] depTime;
+    private final int[] depActual;
+    private final int[] depTimeTs;
+    private final int[] arrIata;
+    private final int[] arrTerminal;
+    private final int[] arrGate;
+    private final int[] arrTime;
+    private final int[] arrActual;
+    private final int[] arrTimeTs;
+    private final int[] status;
+    private final int[] duration;
+    private final int[] delayed;
+
+    private final Map<String, int[]> lists;
+
+    private CompactFlightTable(CodeDictionary dictionary, List<FlightView> distinct, Map<String, int[]> lists) {
+        this.dictionary = dictionary;
+        this.rows = distinct.size();
+        this.lists = lists;
+
+        id = new String[rows];
+        flightNumber = new int[rows];
+        flightIata = new int[rows];
+        airlineIata = new int[rows];
+        depIata = new int[rows];
+        depTerminal = new int[rows];
+        depGate = new int[rows];
+        depTime = new int[rows];
+        depActual = new int[rows];
+        depTimeTs = new int[rows];
+        arrIata = new int[rows];
+        arrTerminal = new int[rows];
+        arrGate = new int[rows];
+        arrTime = new int[rows];
+        arrActual = new int[rows];
+        arrTimeTs = new int[rows];
+        status = new int[rows];
+        duration = new int[rows];
+        delayed = new int[rows];
+
+        for (int i = 0; i < rows; i++) {
+            FlightView f = distinct.get(i);
+            id[i] = f.id();
+            flightNumber[i] = code(f.flightNumber());
+            flightIata[i] = code(f.flightIata());
+            airlineIata[i] = code(f.airlineIata());
+            depIata[i] = code(f.depIata());
+            depTerminal[i] = code(f.depTerminal());
+            depGate[i] = code(f.depGate());
+            depTime[i] = time(f.depTime());
+            depActual[i] = time(f.depActual());
+            depTimeTs[i] = timestamp(f.depTimeTs());
+            arrIata[i] = code(f.arrIata());
+            arrTerminal[i] = code(f.arrTerminal());
+            arrGate[i] = code(f.arrGate());
+            arrTime[i] = time(f.arrTime());
+            arrActual[i] = time(f.arrActual());
+            arrTimeTs[i] = timestamp(f.arrTimeTs());
+            status[i] = code(f.status());
+            duration[i] = f.duration() != null ? f.duration() : NULL;
+            delayed[i] = f.delayed() != null ? f.delayed() : NULL;
+        }
+    }
+
+    private CompactFlightTable(CodeDictionary dictionary, int rows, String[] id, int[][] columns,
+                               Map<String, int[]> lists) {
+        this.dictionary = dictionary;
+        this.rows = rows;
+        this.lists = lists;
+        this.id = id;
+
+        flightNumber = columns[0];
+        flightIata = columns[1];
+        airlineIata = columns[2];
+        depIata = columns[3];
+        depTerminal = columns[4];
+        depGate = columns[5];
+        depTime = columns[6];
+        depActual = columns[7];
+        depTimeTs = columns[8];
+        arrIata = columns[9];
+        arrTerminal = columns[10];
+        arrGate = columns[11];
+        arrTime = columns[12];
+        arrActual = columns[13];
+        arrTimeTs = columns[14];
+        status = columns[15];
+        duration = columns[16];
+        delayed = columns[17];
+    }
+
+    /**
+     * Encode all named lists of a board, equal flights across lists share one row
+     */
+    static CompactFlightTable encode(Map<String, List<FlightView>> board, CodeDictionary dictionary) {
+        Map<FlightView, Integer> rowOf = new HashMap<>();
+        List<FlightView> distinct = new ArrayList<>();
+        Map<String, int[]> lists = new HashMap<>();
+
+        board.forEach((name, flights) -> {
+            List<FlightView> source = flights != null ? flights : List.of();
+            int[] index = new int[source.size()];
+            for (int i = 0; i < index.length; i++) {
+                FlightView f = source.get(i);
+                Integer row = rowOf.get(f);
+                if (row == null) {
+                    row = distinct.size();
+                    distinct.add(f);
+                    rowOf.put(f, row);
+                }
+                index[i] = row;
+            }
+            lists.put(name, index);
+        });
+        return new CompactFlightTable(dictionary, distinct, lists);
+    }
+
+    /**
+     * The board as API model lists, decoded on access
+     */
+    Map<String, List<FlightView>> lists() {
+        Map<String, List<FlightView>> result = new HashMap<>();
+        lists.forEach((name, index) -> result.put(name, new Rows(index)));
+        return result;
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    CodeDictionary dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * The same table over another dictionary: code and time ids are translated column by column,
+     * no FlightView is decoded. Used by the snapshot when a table predates a dictionary rotation.
+     */
+    CompactFlightTable withDictionary(CodeDictionary target) {
+        if (target == dictionary) return this;
+        int[][] columns = columns();
+        for (int c : CODE_COLUMNS) {
+            int[] column = columns[c].clone();
+            for (int i = 0; i < rows; i++) {
+                if (column[i] != NULL_CODE) column[i] = target.intern(dictionary.get(column[i]));
+            }
+            columns[c] = column;
+        }
+        for (int c : TIME_COLUMNS) {
+            int[] column = columns[c].clone();
+            for (int i = 0; i < rows; i++) {
+                int value = column[i];
+                if (value != NULL && value < 0) column[i] = -1 - target.intern(dictionary.get(-1 - value));
+            }
+            columns[c] = column;
+        }
+        return new CompactFlightTable(target, rows, id, columns, lists);
+    }
+
+    FlightView row(int i) {
+        return new FlightView(
+                id[i], string(flightNumber[i]), string(flightIata[i]), string(airlineIata[i]),
+                string(depIata[i]), string(depTerminal[i]), string(depGate[i]),
+                timeString(depTime[i]), timeString(depActual[i]), timestampValue(depTimeTs[i]),
+                string(arrIata[i]), string(arrTerminal[i]), string(arrGate[i]),
+                timeString(arrTime[i]), timeString(arrActual[i]), timestampValue(arrTimeTs[i]),
+                string(status[i]),
+                duration[i] != NULL ? duration[i] : null,
+                delayed[i] != NULL ? delayed[i] : null);
+    }
+
+    /* ==================================================================
+       BINARY FORM (snapshot)
+    ================================================================== */
+
+    /**
+     * rows, 18 int columns, the row ids, then the named lists. Ids refer to this table's dictionary.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(rows);
+        for (int[] column : columns()) {
+            for (int value : column) {
+                out.writeInt(value);
+            }
+        }
+        for (String value : id) {
+            out.writeBoolean(value != null);
+            if (value != null) writeString(out, value);
+        }
+        out.writeInt(lists.size());
+        for (Map.Entry<String, int[]> list : lists.entrySet()) {
+            writeString(out, list.getKey());
+            out.writeInt(list.getValue().length);
+            for (int row : list.getValue()) {
+                out.writeInt(row);
+            }
+        }
+    }
+
+    /**
+     * Read a table written by writeTo. Every length, row index and dictionary id is checked,
+     * a corrupt or truncated input throws IllegalArgumentException / BufferUnderflowException
+     * here instead of failing later on a request.
+     */
+    static CompactFlightTable readFrom(ByteBuffer in, CodeDictionary dictionary) {
+        int rows = in.getInt();
+        int[][] columns = new int[COLUMNS][];
+        for (int c = 0; c < COLUMNS; c++) {
+            columns[c] = readInts(in, rows);
+        }
+        for (int c : CODE_COLUMNS) {
+            for (int id : columns[c]) {
+                if (id != NULL_CODE) checkId(id, dictionary);
+            }
+        }
+        for (int c : TIME_COLUMNS) {
+            for (int value : columns[c]) {
+                if (value != NULL && value < 0) checkId(-1 - value, dictionary);
+            }
+        }
+        String[] id = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            id[i] = in.get() != 0 ? readString(in) : null;
+        }
+        int listCount = in.getInt();
+        if (listCount < 0) throw new IllegalArgumentException("Corrupt table: " + listCount + " lists");
+        Map<String, int[]> lists = new HashMap<>();
+        for (int l = 0; l < listCount; l++) {
+            String name = readString(in);
+            int[] index = readInts(in, in.getInt());
+            for (int row : index) {
+                if (row < 0 || row >= rows) throw new IllegalArgumentException("Corrupt table: row " + row);
+            }
+            lists.put(name, index);
+        }
+        return new CompactFlightTable(dictionary, rows, id, columns, lists);
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("Corrupt string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int[] readInts(ByteBuffer in, int count) {
+        if (count < 0 || count > in.remaining() / Integer.BYTES) {
+            throw new IllegalArgumentException("Corrupt int array length: " + count);
+        }
+        int[] values = new int[count];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    private static void checkId(int id, CodeDictionary dictionary) {
+        if (id < 0 || id >= dictionary.size()) {
+            throw new IllegalArgumentException("Corrupt table: dictionary id " + id);
+        }
+    }
+
+    private int[][] columns() {
+        return new int[][]{
+                flightNumber, flightIata, airlineIata,
+                depIata, depTerminal, depGate, depTime, depActual, depTimeTs,
+                arrIata, arrTerminal, arrGate, arrTime, arrActual, arrTimeTs,
+                status, duration, delayed};
+    }
+
+    /* ==================================================================
+       ENCODING
+    ================================================================== */
+
+    private int code(String value) {
+        return value != null ? dictionary.intern(value) : NULL_CODE;
+    }
+
+    private String string(int id) {
+        return id != NULL_CODE ? dictionary.get(id) : null;
+    }
+
+    private int time(String value) {
+        if (value == null) return NULL;
+        long minutes = BoardViews.localMinutes(value);
+        if (minutes >= 0 && minutes < Integer.MAX_VALUE && formatMinutes((int) minutes).equals(value)) {
+            return (int) minutes;
+        }
+        // Định dạng lạ → giữ nguyên chuỗi trong dictionary
+        return -1 - dictionary.intern(value);
+    }
+
+    private String timeString(int value) {
+        if (value == NULL) return null;
+        return value >= 0 ? formatMinutes(value) : dictionary.get(-1 - value);
+    }
+
+    private int timestamp(Long seconds) {
+        if (seconds == null) return NULL;
+        if (seconds >= 0 && seconds % 60 == 0 && seconds / 60 < Integer.MAX_VALUE) {
+            return (int) (seconds / 60);
+        }
+        return -1 - dictionary.intern(Long.toString(seconds));
+    }
+
+    private Long timestampValue(int value) {
+        if (value == NULL) return null;
+        return value >= 0 ? value * 60L : Long.valueOf(dictionary.get(-1 - value));
+    }
+
+    private static String formatMinutes(int minutes) {
+        return LocalDateTime.ofEpochSecond(minutes * 60L, 0, ZoneOffset.UTC).format(TIME_FORMAT);
+    }
+
+    /**
+     * List view over row indexes, a FlightView is created on every get()
+     */
+    private final class Rows extends AbstractList<FlightView> implements RandomAccess {
+        private final int[] index;
+
+        Rows(int[] index) {
+            this.index = index;
+        }
+
+        @Override
+        public FlightView get(int i) {
+            return row(index[i]);
+        }
+
+        @Override
+        public int size() {
+            return index.length;
+        }
+    }
+}
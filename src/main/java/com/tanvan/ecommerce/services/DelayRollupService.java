@@ -0,0 +1,243 @@
+package com.tanvan.ecommerce.services;
+
+import com.tanvan.ecommerce.dto.DelayStats;
+import com.tanvan.ecommerce.entity.Airline;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * Delay analytics rollups (table delay_rollup, Flyway V3).
+ *
+ * One row per (airline, airport, direction, local hour) holding flight / delayed / cancelled
+ * counts, total delay minutes and a fixed-bucket delay histogram. Rows are maintained
+ * incrementally from the syncFlights diffs: an insert adds the flight, an update adds the new
+ * values and subtracts the previous ones. Deleted flights keep counting (they rolled off the
+ * AirLabs window, they still happened). Queries read at most 24 rows per airline/airport/day,
+ * independent of how much history is stored.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DelayRollupService {
+
+    public static final String DEPARTURE = "D";
+    public static final String ARRIVAL = "A";
+
+    // Cận trên (phút) của từng bucket histogram, bucket cuối không giới hạn; khớp với V3__delay_rollup.sql
+    static final int[] BUCKET_UPPER = {0, 5, 15, 30, 60, 120, 240, Integer.MAX_VALUE};
+
+    private static final DateTimeFormatter HOUR = DateTimeFormatter.ofPattern("yyyy-MM-dd HH");
+
+    private static final String UPSERT = """
+            INSERT INTO delay_rollup (airline_iata, airport_iata, direction, hour_local,
+                                      flights, delayed_flights, delay_minutes, cancelled, delay_histogram)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (airline_iata, airport_iata, direction, hour_local) DO UPDATE SET
+                flights         = delay_rollup.flights + EXCLUDED.flights,
+                delayed_flights = delay_rollup.delayed_flights + EXCLUDED.delayed_flights,
+                delay_minutes   = delay_rollup.delay_minutes + EXCLUDED.delay_minutes,
+                cancelled       = delay_rollup.cancelled + EXCLUDED.cancelled,
+                delay_histogram = delay_histogram_add(delay_rollup.delay_histogram, EXCLUDED.delay_histogram)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /*
+     * ===========================================================
+     * WRITE - delta từ syncFlights
+     * ============================================================
+     */
+
+    /**
+     * Apply the rollup deltas of one sync, called in the syncFlights DB section.
+     * Every changed row counts on both its departure and its arrival side; a row is only
+     * diffed as changed once (by whichever airport sync sees the change first).
+     */
+    public void apply(AirlineService.SyncResult result) {
+        Map<Key, Delta> deltas = new TreeMap<>();
+        for (Airline a : result.inserted()) {
+            add(deltas, a, 1);
+        }
+        for (int i = 0; i < result.updated().size(); i++) {
+            add(deltas, result.updated().get(i), 1);
+            add(deltas, result.previous().get(i), -1);
+        }
+        deltas.values().removeIf(Delta::isEmpty);
+        if (deltas.isEmpty()) return;
+
+        // Key đã sort (TreeMap) → các sync song song khóa row theo cùng thứ tự, tránh deadlock
+        List<Map.Entry<Key, Delta>> rows = new ArrayList<>(deltas.entrySet());
+        jdbcTemplate.batchUpdate(UPSERT, rows, rows.size(), (ps, row) -> {
+            Key k = row.getKey();
+            Delta d = row.getValue();
+            ps.setString(1, k.airline());
+            ps.setString(2, k.airport());
+            ps.setString(3, k.direction());
+            ps.setTimestamp(4, Timestamp.valueOf(k.hour()));
+            ps.setInt(5, d.flights);
+            ps.setInt(6, d.delayedFlights);
+            ps.setLong(7, d.delayMinutes);
+            ps.setInt(8, d.cancelled);
+            ps.setArray(9, ps.getConnection().createArrayOf("integer",
+                    Arrays.stream(d.histogram).boxed().toArray(Integer[]::new)));
+        });
+        log.debug("📊 Delay rollups updated: {} row(s)", rows.size());
+    }
+
+    private void add(Map<Key, Delta> deltas, Airline a, int sign) {
+        if (a.getAirlineIata() == null) return;
+        addSide(deltas, a, sign, DEPARTURE, a.getDepIata(), a.getDepTime());
+        addSide(deltas, a, sign, ARRIVAL, a.getArrIata(), a.getArrTime());
+    }
+
+    private void addSide(Map<Key, Delta> deltas, Airline a, int sign, String direction, String airport, String time) {
+        LocalDateTime hour = hourOf(time);
+        if (airport == null || hour == null) return;
+        deltas.computeIfAbsent(new Key(a.getAirlineIata(), airport, direction, hour), k -> new Delta())
+                .add(a, sign);
+    }
+
+    /**
+     * "2026-01-01 10:35" → 2026-01-01T10:00, null when unparseable
+     */
+    static LocalDateTime hourOf(String time) {
+        if (time == null || time.length() < 13) return null;
+        try {
+            return LocalDateTime.parse(time.substring(0, 13), HOUR);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    static int bucketOf(int delayMinutes) {
+        int b = 0;
+        while (delayMinutes > BUCKET_UPPER[b]) b++;
+        return b;
+    }
+
+    /*
+     * ===========================================================
+     * READ - tổng hợp theo khoảng giờ
+     * ============================================================
+     */
+
+    /**
+     * Aggregate the rollups of an airline and/or airport over [from, to) local hours
+     */
+    @Transactional(readOnly = true)
+    public DelayStats query(String airline, String airport, String direction, LocalDateTime from, LocalDateTime to) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT flights, delayed_flights, delay_minutes, cancelled, delay_histogram FROM delay_rollup "
+                        + "WHERE direction = ? AND hour_local >= ? AND hour_local < ?");
+        List<Object> args = new ArrayList<>(List.of(direction, Timestamp.valueOf(from), Timestamp.valueOf(to)));
+        if (airline != null) {
+            sql.append(" AND airline_iata = ?");
+            args.add(airline);
+        }
+        if (airport != null) {
+            sql.append(" AND airport_iata = ?");
+            args.add(airport);
+        }
+
+        Delta total = new Delta();
+        jdbcTemplate.query(sql.toString(), rs -> {
+            total.flights += rs.getInt(1);
+            total.delayedFlights += rs.getInt(2);
+            total.delayMinutes += rs.getLong(3);
+            total.cancelled += rs.getInt(4);
+            Integer[] histogram = (Integer[]) rs.getArray(5).getArray();
+            for (int i = 0; i < histogram.length && i < total.histogram.length; i++) {
+                total.histogram[i] += histogram[i];
+            }
+        }, args.toArray());
+
+        long operated = total.flights - total.cancelled;
+        return new DelayStats(airline, airport, direction, from.toString(), to.toString(),
+                total.flights, total.delayedFlights, total.cancelled, total.delayMinutes,
+                operated > 0 ? (double) total.delayMinutes / operated : 0,
+                operated > 0 ? (double) (operated - total.delayedFlights) / operated : 0,
+                percentile(total.histogram, 0.5), percentile(total.histogram, 0.9));
+    }
+
+    /**
+     * Percentile from the histogram, interpolated linearly inside the bucket
+     * (the open last bucket reports its lower bound)
+     */
+    static int percentile(int[] histogram, double q) {
+        long count = 0;
+        for (int c : histogram) count += c;
+        if (count == 0) return 0;
+
+        double rank = q * count;
+        long seen = 0;
+        for (int b = 0; b < histogram.length; b++) {
+            if (histogram[b] > 0 && seen + histogram[b] >= rank) {
+                if (b == 0) return 0;
+                int lower = BUCKET_UPPER[b - 1];
+                if (BUCKET_UPPER[b] == Integer.MAX_VALUE) return lower + 1;
+                double within = (rank - seen) / histogram[b];
+                return (int) Math.round(lower + within * (BUCKET_UPPER[b] - lower));
+            }
+            seen += histogram[b];
+        }
+        return BUCKET_UPPER[BUCKET_UPPER.length - 2] + 1;
+    }
+
+    /*
+     * ===========================================================
+     * ROLLUP ROW
+     * ============================================================
+     */
+
+    private record Key(String airline, String airport, String direction, LocalDateTime hour)
+            implements Comparable<Key> {
+
+        private static final Comparator<Key> ORDER = Comparator.comparing(Key::airline)
+                .thenComparing(Key::airport).thenComparing(Key::direction).thenComparing(Key::hour);
+
+        @Override
+        public int compareTo(Key o) {
+            return ORDER.compare(this, o);
+        }
+    }
+
+    private static final class Delta {
+        int flights;
+        int delayedFlights;
+        long delayMinutes;
+        int cancelled;
+        final int[] histogram = new int[BUCKET_UPPER.length];
+
+        /**
+         * Same rules as the backfill in V3__delay_rollup.sql
+         */
+        void add(Airline a, int sign) {
+            flights += sign;
+            if ("cancelled".equalsIgnoreCase(a.getStatus())) {
+                cancelled += sign;
+                return;
+            }
+            int delay = Math.max(0, a.getDelayed() != null ? a.getDelayed() : 0);
+            if (delay > 0) delayedFlights += sign;
+            delayMinutes += (long) sign * delay;
+            histogram[bucketOf(delay)] += sign;
+        }
+
+        boolean isEmpty() {
+            if (flights != 0 || delayedFlights != 0 || delayMinutes != 0 || cancelled != 0) return false;
+            for (int c : histogram) {
+                if (c != 0) return false;
+            }
+            return true;
+        }
+    }
+}
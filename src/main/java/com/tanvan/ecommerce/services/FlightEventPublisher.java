@@ -0,0 +1,167 @@
+package com.tanvan.ecommerce.services;
+
+import com.tanvan.ecommerce.entity.Airline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisCallback;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Flight change events on a Redis Stream (default FLIGHTS:EVENTS).
+ *
+ * Every insert / update / delete detected by a sync becomes one stream entry:
+ *  type, flight, airline, dep, depTime, arr, arrTime, airport (synced airport, comma-separated
+ *  for a bulk refresh batch), syncedAt
+ *  + for inserts the changeable fields that are set, for updates only the fields that changed
+ *    (a field cleared upstream is sent as an empty string).
+ *
+ * All entries of one airport sync go out in a single pipelined batch, trimmed with
+ * approximate MAXLEN. Consumer groups listed in app.events.groups are created on startup
+ * (MKSTREAM, so they exist before the first event); consumers read with XREADGROUP / XACK.
+ */
+@Slf4j
+@Service
+public class FlightEventPublisher {
+
+    public static final String TYPE_INSERT = "insert";
+    public static final String TYPE_UPDATE = "update";
+    public static final String TYPE_DELETE = "delete";
+
+    // Các field có thể đổi giữa hai lần sync (cùng danh sách với AirlineService.computeChangeableHash)
+    private static final Map<String, Function<Airline, Object>> CHANGEABLE = new LinkedHashMap<>();
+
+    static {
+        CHANGEABLE.put("depGate", Airline::getDepGate);
+        CHANGEABLE.put("depActual", Airline::getDepActual);
+        CHANGEABLE.put("arrGate", Airline::getArrGate);
+        CHANGEABLE.put("arrActual", Airline::getArrActual);
+        CHANGEABLE.put("status", Airline::getStatus);
+        CHANGEABLE.put("delayed", Airline::getDelayed);
+        CHANGEABLE.put("depTimeTs", Airline::getDepTimeTs);
+        CHANGEABLE.put("arrTimeTs", Airline::getArrTimeTs);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final Counter published;
+    private final Counter failed;
+
+    @Value("${app.events.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.events.stream-key:FLIGHTS:EVENTS}")
+    private String streamKey;
+
+    @Value("${app.events.max-len:100000}")
+    private long maxLen;
+
+    @Value("${app.events.groups:}")
+    private List<String> groups;
+
+    public FlightEventPublisher(StringRedisTemplate redisTemplate, MeterRegistry registry) {
+        this.redisTemplate = redisTemplate;
+        this.published = registry.counter("flights.events.published");
+        this.failed = registry.counter("flights.events.failed");
+    }
+
+    /**
+     * Create the configured consumer groups (and the stream) if missing
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void createGroups() {
+        if (!enabled) return;
+        byte[] key = streamKey.getBytes(StandardCharsets.UTF_8);
+        for (String group : groups) {
+            if (group.isBlank()) continue;
+            try {
+                redisTemplate.execute((RedisCallback<String>) connection ->
+                        connection.streamCommands().xGroupCreate(key, group.trim(), ReadOffset.from("0"), true));
+                log.info("📣 Consumer group created: {} on {}", group.trim(), streamKey);
+            } catch (Exception e) {
+                // BUSYGROUP → group đã tồn tại
+                if (!String.valueOf(e.getMessage()).contains("BUSYGROUP")) {
+                    log.warn("⚠️ Could not create consumer group {}: {}", group.trim(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Append the changes of one airport sync to the stream, one pipelined round trip.
+     * Failures are logged and counted, the sync itself is never failed by the event stream.
+     */
+    public void publish(String iata, AirlineService.SyncResult... results) {
+        if (!enabled) return;
+
+        String syncedAt = Long.toString(System.currentTimeMillis());
+        List<Map<byte[], byte[]>> events = new ArrayList<>();
+        for (AirlineService.SyncResult result : results) {
+            for (Airline a : result.inserted()) {
+                events.add(event(TYPE_INSERT, a, null, iata, syncedAt));
+            }
+            for (int i = 0; i < result.updated().size(); i++) {
+                events.add(event(TYPE_UPDATE, result.updated().get(i), result.previous().get(i), iata, syncedAt));
+            }
+            for (Airline a : result.deleted()) {
+                events.add(event(TYPE_DELETE, a, null, iata, syncedAt));
+            }
+        }
+        if (events.isEmpty()) return;
+
+        byte[] key = streamKey.getBytes(StandardCharsets.UTF_8);
+        XAddOptions options = XAddOptions.maxlen(maxLen).approximateTrimming(true);
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Map<byte[], byte[]> fields : events) {
+                    connection.streamCommands().xAdd(StreamRecords.newRecord().in(key).ofMap(fields), options);
+                }
+                return null;
+            });
+            published.increment(events.size());
+            log.debug("📣 {} change event(s) published for {}", events.size(), iata);
+        } catch (Exception e) {
+            failed.increment(events.size());
+            log.warn("⚠️ Failed to publish {} change event(s) for {}: {}", events.size(), iata, e.getMessage());
+        }
+    }
+
+    private Map<byte[], byte[]> event(String type, Airline a, Airline previous, String iata, String syncedAt) {
+        Map<byte[], byte[]> fields = new LinkedHashMap<>();
+        put(fields, "type", type);
+        put(fields, "flight", a.getFlightIata());
+        put(fields, "airline", a.getAirlineIata());
+        put(fields, "dep", a.getDepIata());
+        put(fields, "depTime", a.getDepTime());
+        put(fields, "arr", a.getArrIata());
+        put(fields, "arrTime", a.getArrTime());
+        put(fields, "airport", iata.toUpperCase());
+        put(fields, "syncedAt", syncedAt);
+
+        if (TYPE_DELETE.equals(type)) return fields;
+        for (Map.Entry<String, Function<Airline, Object>> field : CHANGEABLE.entrySet()) {
+            Object value = field.getValue().apply(a);
+            if (previous == null) {
+                if (value != null) put(fields, field.getKey(), value);
+            } else if (!Objects.equals(value, field.getValue().apply(previous))) {
+                put(fields, field.getKey(), value != null ? value : "");
+            }
+        }
+        return fields;
+    }
+
+    private static void put(Map<byte[], byte[]> fields, String name, Object value) {
+        if (value == null) return;
+        fields.put(name.getBytes(StandardCharsets.UTF_8), value.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
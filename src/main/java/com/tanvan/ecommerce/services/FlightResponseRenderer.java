@@ -0,0 +1,219 @@
+package com.tanvan.ecommerce.services;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.tanvan.ecommerce.dto.CachedFlightsResponse;
+import com.tanvan.ecommerce.dto.FlightView;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.lang.reflect.RecordComponent;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sparse fieldsets for flight responses (?fields=flightIata,depTime,status).
+ *
+ * Field selection is a Jackson property filter applied while writing, so no trimmed
+ * copies of the flights are built. One ObjectWriter is kept per field set, and rendered
+ * bytes of versioned payloads are kept in a small LRU so popular field sets are served
+ * pre-rendered until the cache entry they came from changes.
+ *
+ * The same payloads can be written as CBOR (Accept: application/cbor) or in a columnar,
+ * dictionary-encoded layout (Accept: application/vnd.flightschedule.columnar+cbor / +json)
+ * where every repeated airport/airline/status string is sent once.
+ */
+@Service
+public class FlightResponseRenderer {
+
+    private static final String FILTER_ID = "flightFields";
+    private static final int MAX_WRITERS = 256;
+    private static final String ALL_FIELDS = "*";
+
+    /**
+     * Field set requested by FlightBoard.html (rendered into the page), also pre-warmed on startup
+     */
+    public static final String BOARD_FIELDS =
+            "airlineIata,flightIata,flightNumber,depIata,arrIata,depTime,depActual,arrTime,arrActual,status,delayed";
+
+    private static final Set<String> FIELD_NAMES = Collections.unmodifiableSet(new LinkedHashSet<>(
+            Arrays.stream(FlightView.class.getRecordComponents()).map(RecordComponent::getName).toList()));
+
+    /**
+     * Filter attached to FlightView only inside this renderer (Redis/MVC mappers are unaffected)
+     */
+    @JsonFilter(FILTER_ID)
+    private interface FieldFilterMixin {
+    }
+
+    /**
+     * Wire formats selectable through the Accept header
+     */
+    public enum WireFormat {
+        JSON(MediaType.APPLICATION_JSON, false),
+        CBOR(MediaType.APPLICATION_CBOR, false),
+        COLUMNAR_JSON(MediaType.parseMediaType("application/vnd.flightschedule.columnar+json"), true),
+        COLUMNAR_CBOR(MediaType.parseMediaType("application/vnd.flightschedule.columnar+cbor"), true);
+
+        private final MediaType mediaType;
+        private final boolean columnar;
+
+        WireFormat(MediaType mediaType, boolean columnar) {
+            this.mediaType = mediaType;
+            this.columnar = columnar;
+        }
+
+        public MediaType getMediaType() {
+            return mediaType;
+        }
+
+        public boolean isBinary() {
+            return this == CBOR || this == COLUMNAR_CBOR;
+        }
+
+        /**
+         * Highest-q supported type in the Accept header wins (header order between equal q),
+         * q=0 means "not acceptable"; anything else (incl. wildcards) is JSON
+         */
+        public static WireFormat fromAccept(String accept) {
+            if (accept == null || accept.isBlank()) return JSON;
+            List<MediaType> requested;
+            try {
+                requested = new ArrayList<>(MediaType.parseMediaTypes(accept));
+            } catch (InvalidMediaTypeException e) {
+                return JSON;
+            }
+            // Sort ổn định theo q giảm dần
+            requested.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+            for (MediaType type : requested) {
+                if (type.getQualityValue() == 0) break;
+                for (WireFormat format : values()) {
+                    if (format.mediaType.equalsTypeAndSubtype(type)) return format;
+                }
+            }
+            return JSON;
+        }
+    }
+
+    private final ObjectMapper mapper = new ObjectMapper().addMixIn(FlightView.class, FieldFilterMixin.class);
+    private final ObjectMapper cborMapper = new CBORMapper().addMixIn(FlightView.class, FieldFilterMixin.class);
+
+    private final Map<String, ObjectWriter> writers = new ConcurrentHashMap<>();
+    private final Map<String, ObjectWriter> cborWriters = new ConcurrentHashMap<>();
+
+    private final Map<String, byte[]> rendered;
+
+    public FlightResponseRenderer(@Value("${app.response.rendered-cache-size:256}") int renderedCacheSize) {
+        this.rendered = Collections.synchronizedMap(new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > renderedCacheSize;
+            }
+        });
+    }
+
+    /**
+     * Parse and validate ?fields=, returns a sorted set so equal selections share a writer
+     */
+    public SortedSet<String> parseFields(String fields) {
+        SortedSet<String> selected = new TreeSet<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) continue;
+            if (!FIELD_NAMES.contains(name)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Unknown field '" + name + "', allowed: " + FIELD_NAMES);
+            }
+            selected.add(name);
+        }
+        if (selected.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "fields must not be empty");
+        }
+        return selected;
+    }
+
+    /**
+     * Render payload in the requested wire format keeping only the selected flight fields.
+     * @param payload List of flights, departures/arrivals map or CachedFlightsResponse
+     * @param fields selected flight fields, null = all
+     * @param versionKey identifies the payload version (e.g. airport + cache timestamp),
+     *                   null when the payload must not be reused
+     */
+    public byte[] render(Object payload, SortedSet<String> fields, String versionKey, WireFormat format) {
+        String fieldKey = fields != null ? String.join(",", fields) : ALL_FIELDS;
+        String renderedKey = versionKey != null ? versionKey + "|" + format + "|" + fieldKey : null;
+
+        if (renderedKey != null) {
+            byte[] cached = rendered.get(renderedKey);
+            if (cached != null) return cached;
+        }
+
+        try {
+            Object body = format.columnar ? columnar(payload, fields) : payload;
+            ObjectWriter writer = format.isBinary()
+                    ? writer(cborWriters, cborMapper, fieldKey, fields)
+                    : writer(writers, mapper, fieldKey, fields);
+            byte[] bytes = writer.writeValueAsBytes(body);
+            if (renderedKey != null) {
+                rendered.put(renderedKey, bytes);
+            }
+            return bytes;
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Lỗi khi serialize response: " + e.getMessage(), e);
+        }
+    }
+
+    /* ==================================================================
+       PRIVATE METHODS
+    ================================================================== */
+
+    /**
+     * Columnar layout: { dictionary: [...], <list name>: ColumnarFlights, ...metadata }
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> columnar(Object payload, Set<String> fields) {
+        ColumnarEncoder encoder = new ColumnarEncoder(fields);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("dictionary", encoder.dictionary());
+
+        if (payload instanceof List<?> flights) {
+            body.put("flights", encoder.encode((List<FlightView>) flights));
+        } else if (payload instanceof Map<?, ?> lists) {
+            ((Map<String, List<FlightView>>) lists).forEach((name, flights) -> body.put(name, encoder.encode(flights)));
+        } else if (payload instanceof CachedFlightsResponse response) {
+            body.put("departures", encoder.encode(response.departures()));
+            body.put("arrivals", encoder.encode(response.arrivals()));
+            body.put("source", response.source());
+            body.put("ageSeconds", response.ageSeconds());
+            body.put("stale", response.stale());
+            body.put("refreshScheduled", response.refreshScheduled());
+        } else {
+            throw new IllegalArgumentException("Unsupported columnar payload: " + payload.getClass().getName());
+        }
+        return body;
+    }
+
+    private ObjectWriter writer(Map<String, ObjectWriter> cache, ObjectMapper source, String fieldKey, Set<String> fields) {
+        ObjectWriter writer = cache.get(fieldKey);
+        if (writer == null) {
+            SimpleBeanPropertyFilter filter = fields != null
+                    ? SimpleBeanPropertyFilter.filterOutAllExcept(fields)
+                    : SimpleBeanPropertyFilter.serializeAll();
+            writer = source.writer(new SimpleFilterProvider().addFilter(FILTER_ID, filter));
+            // Chỉ giữ writer cho các field set phổ biến, tránh bị spam tổ hợp field
+            if (cache.size() < MAX_WRITERS) {
+                cache.putIfAbsent(fieldKey, writer);
+            }
+        }
+        return writer;
+    }
+}
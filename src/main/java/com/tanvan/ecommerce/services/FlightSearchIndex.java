@@ -0,0 +1,324 @@
+package com.tanvan.ecommerce.services;
+
+import com.tanvan.ecommerce.dto.FlightView;
+import com.tanvan.ecommerce.entity.Airline;
+import com.tanvan.ecommerce.repository.AirlineRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * In-memory flight search index.
+ *
+ *  - prefix trie over flight IATA and flight number ("VN2" → VN2xx, "21" → xx21x)
+ *  - airline → flights
+ *  - (dep, arr) route → flights
+ *  - departure airport, arrival airport, local departure date → flights
+ *
+ * Lookups walk the trie by prefix length and stop after `limit` matches, so their cost
+ * does not depend on how many flights are indexed. The index is kept up to date from the
+ * syncFlights diffs and rebuilt from Postgres on startup and every rebuild-interval-ms
+ * (changes applied while a rebuild runs are replayed onto the new index before the swap).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FlightSearchIndex {
+
+    private static final SortedSet<String> NO_KEYS = Collections.emptySortedSet();
+
+    private final AirlineRepository airlineRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private State state = new State();
+    private List<FlightView> journalPuts;
+    private List<String> journalRemoves;
+
+    /**
+     * Search, all given criteria must match
+     * @param query flight IATA / number prefix, optional
+     * @param airline airline IATA, optional
+     * @param from departure airport, optional (route lookup when to is set too)
+     * @param to arrival airport, optional
+     * @param date local departure date yyyy-MM-dd, optional
+     */
+    public List<FlightView> search(String query, String airline, String from, String to, String date, int limit) {
+        Predicate<FlightView> filter = f ->
+                (airline == null || airline.equalsIgnoreCase(f.airlineIata()))
+                        && (from == null || from.equalsIgnoreCase(f.depIata()))
+                        && (to == null || to.equalsIgnoreCase(f.arrIata()))
+                        && (date == null || (f.depTime() != null && f.depTime().startsWith(date)))
+                        && (query == null || matchesPrefix(f, query));
+
+        lock.readLock().lock();
+        try {
+            // Bắt đầu từ tập ứng viên hẹp nhất
+            if (from != null && to != null) {
+                return state.collect(state.byRoute.getOrDefault(routeKey(from, to), NO_KEYS), filter, limit);
+            }
+            if (airline != null) {
+                return state.collect(state.byAirline.getOrDefault(airline.toUpperCase(), NO_KEYS), filter, limit);
+            }
+            if (query != null) {
+                return state.prefix(query.toUpperCase(), filter, limit);
+            }
+            // Chỉ from / to / date → posting nhỏ nhất, chỉ quét toàn bộ khi không có điều kiện nào
+            List<SortedSet<String>> postings = new ArrayList<>(3);
+            if (from != null) postings.add(state.byDeparture.getOrDefault(from.toUpperCase(), NO_KEYS));
+            if (to != null) postings.add(state.byArrival.getOrDefault(to.toUpperCase(), NO_KEYS));
+            // Posting theo ngày đầy đủ, prefix ngắn hơn (vd. "2026-01") vẫn chỉ là filter
+            if (date != null && date.length() == 10) postings.add(state.byDate.getOrDefault(date, NO_KEYS));
+            SortedSet<String> candidates = postings.stream().min(Comparator.comparingInt(Set::size)).orElse(null);
+            return state.collect(candidates, filter, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return state.flights.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Apply one syncFlights diff
+     */
+    public void apply(AirlineService.SyncResult result) {
+        if (result.changeCount() == 0) return;
+        lock.writeLock().lock();
+        try {
+            for (Airline a : result.inserted()) put(FlightView.from(a));
+            for (Airline a : result.updated()) put(FlightView.from(a));
+            for (Airline a : result.deleted()) remove(key(a.getFlightIata(), a.getDepTime()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        Thread.ofVirtual().name("search-index-rebuild").start(this::rebuild);
+    }
+
+    // Chạy trên thread riêng, không giữ scheduler thread (heartbeat) trong lúc đọc cả bảng
+    @Scheduled(fixedDelayString = "${app.search.rebuild-interval-ms:3600000}",
+            initialDelayString = "${app.search.rebuild-interval-ms:3600000}")
+    public void scheduledRebuild() {
+        Thread.ofVirtual().name("search-index-rebuild").start(this::rebuild);
+    }
+
+    /**
+     * Rebuild from Postgres and swap
+     */
+    public void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) return;
+        long startedAt = System.currentTimeMillis();
+        try {
+            lock.writeLock().lock();
+            try {
+                journalPuts = new ArrayList<>();
+                journalRemoves = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            State fresh = new State();
+            for (FlightView f : airlineRepository.findAllViews()) {
+                fresh.put(f);
+            }
+
+            lock.writeLock().lock();
+            try {
+                journalPuts.forEach(fresh::put);
+                journalRemoves.forEach(fresh::remove);
+                state = fresh;
+            } finally {
+                journalPuts = null;
+                journalRemoves = null;
+                lock.writeLock().unlock();
+            }
+            log.info("🔎 Search index rebuilt: {} flights in {} ms", size(), System.currentTimeMillis() - startedAt);
+        } catch (Exception e) {
+            log.error("❌ Search index rebuild failed: {}", e.getMessage(), e);
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    /* ==================================================================
+       PRIVATE METHODS
+    ================================================================== */
+
+    private void put(FlightView f) {
+        state.put(f);
+        if (journalPuts != null) journalPuts.add(f);
+    }
+
+    private void remove(String key) {
+        state.remove(key);
+        if (journalRemoves != null) journalRemoves.add(key);
+    }
+
+    private static boolean matchesPrefix(FlightView f, String query) {
+        String q = query.toUpperCase();
+        return (f.flightIata() != null && f.flightIata().toUpperCase().startsWith(q))
+                || (f.flightNumber() != null && f.flightNumber().toUpperCase().startsWith(q));
+    }
+
+    // Một chuyến = flight IATA + giờ khởi hành (cùng key với unique_departure)
+    private static String key(String flightIata, String depTime) {
+        return flightIata + "|" + depTime;
+    }
+
+    // Ngày khởi hành local "yyyy-MM-dd", cùng điều kiện với filter date (depTime.startsWith)
+    private static String dateOf(FlightView f) {
+        return f.depTime() != null && f.depTime().length() >= 10 ? f.depTime().substring(0, 10) : null;
+    }
+
+    private static String routeKey(String from, String to) {
+        return from.toUpperCase() + "-" + to.toUpperCase();
+    }
+
+    /**
+     * Index contents, guarded by the outer lock once published
+     */
+    private static final class State {
+        private final Map<String, FlightView> flights = new HashMap<>();
+        private final TrieNode root = new TrieNode();
+        private final Map<String, SortedSet<String>> byAirline = new HashMap<>();
+        private final Map<String, SortedSet<String>> byRoute = new HashMap<>();
+        private final Map<String, SortedSet<String>> byDeparture = new HashMap<>();
+        private final Map<String, SortedSet<String>> byArrival = new HashMap<>();
+        private final Map<String, SortedSet<String>> byDate = new HashMap<>();
+
+        void put(FlightView f) {
+            if (f.flightIata() == null) return;
+            String key = key(f.flightIata(), f.depTime());
+            remove(key);
+            flights.put(key, f);
+            root.add(f.flightIata().toUpperCase(), key);
+            if (f.flightNumber() != null) root.add(f.flightNumber().toUpperCase(), key);
+            if (f.airlineIata() != null) {
+                byAirline.computeIfAbsent(f.airlineIata().toUpperCase(), k -> new TreeSet<>()).add(key);
+            }
+            if (f.depIata() != null && f.arrIata() != null) {
+                byRoute.computeIfAbsent(routeKey(f.depIata(), f.arrIata()), k -> new TreeSet<>()).add(key);
+            }
+            if (f.depIata() != null) {
+                byDeparture.computeIfAbsent(f.depIata().toUpperCase(), k -> new TreeSet<>()).add(key);
+            }
+            if (f.arrIata() != null) {
+                byArrival.computeIfAbsent(f.arrIata().toUpperCase(), k -> new TreeSet<>()).add(key);
+            }
+            String date = dateOf(f);
+            if (date != null) byDate.computeIfAbsent(date, k -> new TreeSet<>()).add(key);
+        }
+
+        void remove(String key) {
+            FlightView old = flights.remove(key);
+            if (old == null) return;
+            root.remove(old.flightIata().toUpperCase(), 0, key);
+            if (old.flightNumber() != null) root.remove(old.flightNumber().toUpperCase(), 0, key);
+            if (old.airlineIata() != null) removePosting(byAirline, old.airlineIata().toUpperCase(), key);
+            if (old.depIata() != null && old.arrIata() != null) {
+                removePosting(byRoute, routeKey(old.depIata(), old.arrIata()), key);
+            }
+            if (old.depIata() != null) removePosting(byDeparture, old.depIata().toUpperCase(), key);
+            if (old.arrIata() != null) removePosting(byArrival, old.arrIata().toUpperCase(), key);
+            String date = dateOf(old);
+            if (date != null) removePosting(byDate, date, key);
+        }
+
+        List<FlightView> prefix(String prefix, Predicate<FlightView> filter, int limit) {
+            TrieNode node = root;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.children.get(prefix.charAt(i));
+            }
+            List<FlightView> result = new ArrayList<>();
+            if (node != null) node.collect(flights, filter, limit, new HashSet<>(), result);
+            return result;
+        }
+
+        List<FlightView> collect(Collection<String> keys, Predicate<FlightView> filter, int limit) {
+            Iterable<String> candidates = keys != null ? keys : flights.keySet();
+            List<FlightView> result = new ArrayList<>();
+            for (String key : candidates) {
+                FlightView f = flights.get(key);
+                if (f != null && filter.test(f)) {
+                    result.add(f);
+                    if (result.size() >= limit) break;
+                }
+            }
+            return result;
+        }
+
+        private static void removePosting(Map<String, SortedSet<String>> postings, String term, String key) {
+            SortedSet<String> keys = postings.get(term);
+            if (keys == null) return;
+            keys.remove(key);
+            if (keys.isEmpty()) postings.remove(term);
+        }
+    }
+
+    /**
+     * Trie node: children by character, keys of flights whose term ends here
+     */
+    private static final class TrieNode {
+        private final TreeMap<Character, TrieNode> children = new TreeMap<>();
+        private final SortedSet<String> keys = new TreeSet<>();
+
+        void add(String term, String key) {
+            TrieNode node = this;
+            for (int i = 0; i < term.length(); i++) {
+                node = node.children.computeIfAbsent(term.charAt(i), c -> new TrieNode());
+            }
+            node.keys.add(key);
+        }
+
+        /**
+         * Remove and prune empty branches, returns true when this node became empty
+         */
+        boolean remove(String term, int depth, String key) {
+            if (depth == term.length()) {
+                keys.remove(key);
+            } else {
+                TrieNode child = children.get(term.charAt(depth));
+                if (child != null && child.remove(term, depth + 1, key)) {
+                    children.remove(term.charAt(depth));
+                }
+            }
+            return keys.isEmpty() && children.isEmpty();
+        }
+
+        /**
+         * Depth-first in code order, stops after limit matches
+         */
+        boolean collect(Map<String, FlightView> flights, Predicate<FlightView> filter, int limit,
+                        Set<String> seen, List<FlightView> result) {
+            for (String key : keys) {
+                FlightView f = flights.get(key);
+                if (f != null && seen.add(key) && filter.test(f)) {
+                    result.add(f);
+                    if (result.size() >= limit) return true;
+                }
+            }
+            for (TrieNode child : children.values()) {
+                if (child.collect(flights, filter, limit, seen, result)) return true;
+            }
+            return false;
+        }
+    }
+}
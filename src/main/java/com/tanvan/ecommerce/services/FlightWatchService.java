@@ -0,0 +1,255 @@
+package com.tanvan.ecommerce.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-flight watch subscriptions pushed over SSE.
+ *
+ * Inverted index: "FLIGHT|yyyy-MM-dd" (flight IATA + local departure date) → watchers.
+ * Every node tails the change event stream (FlightEventPublisher) with a plain XREAD, so a
+ * watcher gets the changes no matter which node ran the sync. Matching one event is a single
+ * map lookup: the cost follows the number of changed flights, not the number of watchers.
+ *
+ * The reader only matches and enqueues: every watcher has a bounded queue drained by one task
+ * at a time on a virtual-thread executor, so a slow client never stalls the stream. A watcher
+ * whose queue is full (app.watch.max-pending-events) is closed and has to reconnect.
+ */
+@Slf4j
+@Service
+public class FlightWatchService {
+
+    private final StringRedisTemplate redisTemplate;
+    private final Map<String, Set<Watcher>> index = new ConcurrentHashMap<>();
+    private final AtomicInteger watcherCount = new AtomicInteger();
+    private final ExecutorService sender = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile Thread reader;
+    private volatile boolean stopped;
+
+    @Value("${app.events.enabled:true}")
+    private boolean eventsEnabled;
+
+    @Value("${app.events.stream-key:FLIGHTS:EVENTS}")
+    private String streamKey;
+
+    @Value("${app.watch.max-watchers:10000}")
+    private int maxWatchers;
+
+    @Value("${app.watch.max-keys-per-watcher:20}")
+    private int maxKeysPerWatcher;
+
+    @Value("${app.watch.timeout-ms:1800000}")
+    private long timeoutMillis;
+
+    @Value("${app.watch.max-pending-events:100}")
+    private int maxPendingEvents;
+
+    // Phải nhỏ hơn command timeout của Lettuce (5s)
+    @Value("${app.watch.block-ms:2000}")
+    private long blockMillis;
+
+    public FlightWatchService(StringRedisTemplate redisTemplate, MeterRegistry registry) {
+        this.redisTemplate = redisTemplate;
+        Gauge.builder("flights.watch.watchers", watcherCount, AtomicInteger::get)
+                .description("Open flight watch subscriptions")
+                .register(registry);
+        Gauge.builder("flights.watch.keys", index, Map::size)
+                .description("Distinct flight/date keys being watched")
+                .register(registry);
+    }
+
+    /**
+     * Index key of a flight on a local departure date
+     */
+    public static String watchKey(String flightIata, String date) {
+        return flightIata.toUpperCase() + "|" + date;
+    }
+
+    /**
+     * Open a subscription on the given watch keys, removed on completion / timeout / send error
+     */
+    public SseEmitter watch(Collection<String> keys) {
+        if (keys.isEmpty() || keys.size() > maxKeysPerWatcher) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "watch between 1 and " + maxKeysPerWatcher + " flights");
+        }
+        if (watcherCount.incrementAndGet() > maxWatchers) {
+            watcherCount.decrementAndGet();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many watchers, retry later");
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Watcher watcher = new Watcher(emitter, Set.copyOf(keys), maxPendingEvents);
+        for (String key : watcher.keys()) {
+            index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(watcher);
+        }
+        emitter.onCompletion(() -> unregister(watcher));
+        emitter.onTimeout(() -> unregister(watcher));
+        emitter.onError(e -> unregister(watcher));
+        log.debug("👀 Watcher registered: {}", watcher.keys());
+        return emitter;
+    }
+
+    private void unregister(Watcher watcher) {
+        if (!watcher.closed().compareAndSet(false, true)) return;
+        watcher.pending().clear();
+        for (String key : watcher.keys()) {
+            index.computeIfPresent(key, (k, watchers) -> {
+                watchers.remove(watcher);
+                return watchers.isEmpty() ? null : watchers;
+            });
+        }
+        watcherCount.decrementAndGet();
+    }
+
+    /*
+     * ===========================================================
+     * STREAM READER - XREAD BLOCK, mỗi node đọc toàn bộ stream
+     * ============================================================
+     */
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!eventsEnabled) {
+            log.warn("⚠️ Change events disabled, flight watches will not receive updates");
+            return;
+        }
+        reader = Thread.ofVirtual().name("flight-watch-reader").start(this::readLoop);
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+        if (reader != null) reader.interrupt();
+        sender.shutdownNow();
+    }
+
+    private void readLoop() {
+        // Bắt đầu từ ID cuối cùng lúc khởi động (không dùng "$": event đến giữa hai lần XREAD sẽ mất)
+        ReadOffset offset = null;
+        StreamReadOptions options = StreamReadOptions.empty().block(Duration.ofMillis(blockMillis)).count(500);
+        while (!stopped) {
+            try {
+                if (offset == null) {
+                    offset = ReadOffset.from(lastEventId());
+                    log.info("👀 Flight watch reader started at {} {}", streamKey, offset.getOffset());
+                }
+                List<MapRecord<String, Object, Object>> records =
+                        redisTemplate.opsForStream().read(options, StreamOffset.create(streamKey, offset));
+                if (records == null || records.isEmpty()) continue;
+                for (MapRecord<String, Object, Object> record : records) {
+                    dispatch(record.getValue());
+                }
+                offset = ReadOffset.from(records.get(records.size() - 1).getId());
+            } catch (Exception e) {
+                if (stopped) return;
+                log.warn("⚠️ Flight watch reader error: {}", e.getMessage());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * XREVRANGE + - COUNT 1: ID of the newest event, 0-0 when the stream is empty / missing
+     */
+    private RecordId lastEventId() {
+        List<MapRecord<String, Object, Object>> last = redisTemplate.opsForStream()
+                .reverseRange(streamKey, Range.unbounded(), Limit.limit().count(1));
+        return last == null || last.isEmpty() ? RecordId.of("0-0") : last.get(0).getId();
+    }
+
+    /**
+     * Match one change event against the index and queue it for its watchers
+     */
+    void dispatch(Map<Object, Object> event) {
+        if (index.isEmpty()) return;
+        Object flight = event.get("flight");
+        Object depTime = event.get("depTime");
+        if (flight == null || depTime == null || depTime.toString().length() < 10) return;
+
+        Set<Watcher> watchers = index.get(watchKey(flight.toString(), depTime.toString().substring(0, 10)));
+        if (watchers == null) return;
+        for (Watcher watcher : watchers) {
+            if (watcher.pending().offer(event)) {
+                schedule(watcher);
+            } else {
+                // Client đọc quá chậm → đóng, client tự kết nối lại
+                log.debug("🐢 Watcher too slow, closing: {}", watcher.keys());
+                unregister(watcher);
+                watcher.emitter().complete();
+            }
+        }
+    }
+
+    /**
+     * At most one drain task per watcher, keeps the events of a watcher in order
+     */
+    private void schedule(Watcher watcher) {
+        if (!watcher.draining().compareAndSet(false, true)) return;
+        try {
+            sender.execute(() -> drain(watcher));
+        } catch (RejectedExecutionException e) {
+            // Đang shutdown
+            watcher.draining().set(false);
+        }
+    }
+
+    private void drain(Watcher watcher) {
+        try {
+            Map<Object, Object> event;
+            while (!watcher.closed().get() && (event = watcher.pending().poll()) != null) {
+                try {
+                    watcher.emitter().send(SseEmitter.event().name(String.valueOf(event.get("type"))).data(event));
+                } catch (IOException | IllegalStateException e) {
+                    // Client đã đóng kết nối
+                    unregister(watcher);
+                    return;
+                }
+            }
+        } finally {
+            watcher.draining().set(false);
+        }
+        // Event đến sau lần poll cuối nhưng trước khi bỏ cờ draining
+        if (!watcher.closed().get() && !watcher.pending().isEmpty()) schedule(watcher);
+    }
+
+    private record Watcher(SseEmitter emitter, Set<String> keys, AtomicBoolean closed,
+                           BlockingQueue<Map<Object, Object>> pending, AtomicBoolean draining) {
+        Watcher(SseEmitter emitter, Set<String> keys, int maxPending) {
+            this(emitter, keys, new AtomicBoolean(), new LinkedBlockingQueue<>(maxPending), new AtomicBoolean());
+        }
+    }
+}
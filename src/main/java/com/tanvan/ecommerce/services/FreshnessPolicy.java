@@ -0,0 +1,191 @@
+package com.tanvan.ecommerce.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Per-airport freshness windows.
+ *
+ * The stale window is sized so that roughly one change is expected per window:
+ * it shrinks for airports whose syncs keep finding inserts/updates/deletes and for
+ * popular airports, and grows for quiet ones. Change rates are learned per hour of
+ * the day (UTC), so an airport's rush hours and nights get different windows without
+ * needing its time zone.
+ *
+ * Refreshes are triggered with probabilistic early expiration (XFetch): the closer a
+ * key is to going stale and the longer its refresh takes, the more likely a request
+ * triggers the refresh early. Written windows are jittered so keys don't expire together.
+ */
+@Slf4j
+@Service
+public class FreshnessPolicy {
+
+    // EWMA weight of the newest sample
+    private static final double ALPHA = 0.3;
+
+    @Value("${app.cache.freshness.default-stale-seconds:30}")
+    private int defaultStaleSeconds;
+
+    @Value("${app.cache.freshness.min-stale-seconds:15}")
+    private int minStaleSeconds;
+
+    @Value("${app.cache.freshness.max-stale-seconds:600}")
+    private int maxStaleSeconds;
+
+    // TTL = stale window × ratio (old constants: 120 / 30)
+    @Value("${app.cache.freshness.ttl-ratio:4}")
+    private int ttlRatio;
+
+    @Value("${app.cache.freshness.jitter:0.1}")
+    private double jitter;
+
+    @Value("${app.cache.freshness.xfetch-beta:1.0}")
+    private double xfetchBeta;
+
+    private final Map<String, AirportStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Record a board request for popularity
+     */
+    public void recordRequest(String iata) {
+        stats(iata).recordRequest(System.currentTimeMillis());
+    }
+
+    /**
+     * Record the outcome of a sync: number of changed rows (insert + update + delete)
+     */
+    public void recordSync(String iata, int changes) {
+        stats(iata).recordSync(System.currentTimeMillis(), changes);
+    }
+
+    /**
+     * Freshness window for the next cache write of this airport, jittered
+     */
+    public Freshness freshnessFor(String iata) {
+        AirportStats s = stats.get(iata.toUpperCase());
+        double stale = defaultStaleSeconds;
+
+        if (s != null) {
+            double changesPerMinute = s.changeRate(currentHour());
+            if (changesPerMinute > 0) {
+                // ~1 expected change per window
+                stale = 60.0 / changesPerMinute;
+            } else if (s.hasSyncHistory()) {
+                stale = maxStaleSeconds;
+            }
+            // Popular airports get fresher data: 10 req/min → /2, 100 req/min → /3
+            stale /= 1 + Math.log10(1 + s.requestsPerMinute());
+        }
+
+        stale = Math.max(minStaleSeconds, Math.min(maxStaleSeconds, stale));
+        stale *= 1 + (ThreadLocalRandom.current().nextDouble() * 2 - 1) * jitter;
+
+        int staleSeconds = (int) Math.max(1, Math.round(stale));
+        return new Freshness(staleSeconds, staleSeconds * ttlRatio);
+    }
+
+    /**
+     * XFetch: refresh before the stale deadline with probability growing as it approaches.
+     * now - delta * beta * ln(rand) >= deadline
+     */
+    public boolean shouldRefreshEarly(long writtenAtMillis, int staleSeconds, long computeMillis) {
+        if (computeMillis <= 0) return false;
+        double rand = ThreadLocalRandom.current().nextDouble();
+        if (rand == 0) return true;
+        long deadline = writtenAtMillis + staleSeconds * 1000L;
+        double gap = -computeMillis * xfetchBeta * Math.log(rand);
+        return System.currentTimeMillis() + gap >= deadline;
+    }
+
+    /**
+     * Refresh priority: popularity × staleness
+     * @param staleness age / stale window (1 = just went stale), larger when nothing is cached
+     */
+    public double refreshPriority(String iata, double staleness) {
+        AirportStats s = stats.get(iata.toUpperCase());
+        double requestsPerMinute = s != null ? s.requestsPerMinute() : 0;
+        return (1 + requestsPerMinute) * Math.max(staleness, 0);
+    }
+
+    private AirportStats stats(String iata) {
+        return stats.computeIfAbsent(iata.toUpperCase(), k -> new AirportStats());
+    }
+
+    private static int currentHour() {
+        return Instant.now().atZone(ZoneOffset.UTC).getHour();
+    }
+
+    /**
+     * Stale window and TTL in seconds
+     */
+    public record Freshness(int staleSeconds, int ttlSeconds) {
+    }
+
+    /**
+     * Learned statistics of one airport
+     */
+    private static class AirportStats {
+        // Changes per minute, one EWMA per hour of day
+        private final double[] hourlyChangeRate = new double[24];
+        private final boolean[] hourSeen = new boolean[24];
+        private double requestRate; // requests per minute (EWMA)
+        private long lastRequestAt;
+        private long lastSyncAt;
+
+        synchronized void recordRequest(long now) {
+            if (lastRequestAt > 0) {
+                double minutes = Math.max((now - lastRequestAt) / 60000.0, 1.0 / 60);
+                requestRate = ALPHA * (1 / minutes) + (1 - ALPHA) * requestRate;
+            }
+            lastRequestAt = now;
+        }
+
+        synchronized void recordSync(long now, int changes) {
+            if (lastSyncAt > 0) {
+                double minutes = Math.max((now - lastSyncAt) / 60000.0, 0.5);
+                int hour = Instant.ofEpochMilli(now).atZone(ZoneOffset.UTC).getHour();
+                double rate = changes / minutes;
+                hourlyChangeRate[hour] = hourSeen[hour]
+                        ? ALPHA * rate + (1 - ALPHA) * hourlyChangeRate[hour]
+                        : rate;
+                hourSeen[hour] = true;
+            }
+            lastSyncAt = now;
+        }
+
+        synchronized double changeRate(int hour) {
+            if (hourSeen[hour]) return hourlyChangeRate[hour];
+            // Hour not learned yet → average of the learned hours
+            double sum = 0;
+            int n = 0;
+            for (int h = 0; h < 24; h++) {
+                if (hourSeen[h]) {
+                    sum += hourlyChangeRate[h];
+                    n++;
+                }
+            }
+            return n > 0 ? sum / n : 0;
+        }
+
+        synchronized boolean hasSyncHistory() {
+            for (boolean seen : hourSeen) {
+                if (seen) return true;
+            }
+            return false;
+        }
+
+        synchronized double requestsPerMinute() {
+            // Decay when nobody asked for a while
+            if (lastRequestAt == 0) return 0;
+            double idleMinutes = (System.currentTimeMillis() - lastRequestAt) / 60000.0;
+            return idleMinutes > 1 ? requestRate / idleMinutes : requestRate;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.tanvan.ecommerce.services;
+
+import com.tanvan.ecommerce.repository.AirlineRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Airport IATA code validation in front of the cache and AirLabs.
+ *
+ *  - known codes: one bit per three-letter code (26^3 = 17,576 bits, ~2 KB), lock-free reads.
+ *    Seeded from app.iata.codes-location (full IATA airport list, one or more codes per line),
+ *    then learned from airline_schedule on startup and from every non-empty sync.
+ *  - negative cache: well-formed but unknown codes whose sync came back empty are rejected
+ *    for app.iata.negative-ttl-seconds, on this node and (via Redis) on the others.
+ *    At most app.iata.negative-max-entries codes locally, least recently used evicted first.
+ *
+ * With app.iata.strict=true (default) unknown codes are rejected outright, without a first
+ * AirLabs probe. Strict mode needs the full list: startup fails when app.iata.codes-location
+ * holds fewer than app.iata.strict-min-codes codes (the Docker image ships the full list).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IataCodeRegistry {
+
+    private static final int CODE_SPACE = 26 * 26 * 26;
+
+    public enum Verdict { VALID, MALFORMED, UNKNOWN }
+
+    private final AirlineRepository airlineRepository;
+    private final RedisService redisService;
+
+    private final AtomicLongArray known = new AtomicLongArray((CODE_SPACE + 63) / 64);
+
+    // code → hết hạn (epoch millis), LRU: đầy thì bỏ mã lâu không dùng nhất chứ không xoá hết
+    private final Map<String, Long> negative = Collections.synchronizedMap(new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > negativeMaxEntries;
+        }
+    });
+
+    @Value("${app.iata.strict:true}")
+    private boolean strict;
+
+    @Value("${app.iata.codes-location:classpath:airports/iata-codes.txt}")
+    private Resource codesLocation;
+
+    // Danh sách IATA đầy đủ ~9k mã, ít hơn ngưỡng này → strict không khởi động được
+    @Value("${app.iata.strict-min-codes:5000}")
+    private int strictMinCodes;
+
+    @Value("${app.iata.negative-ttl-seconds:300}")
+    private int negativeTtlSeconds;
+
+    @Value("${app.iata.negative-max-entries:10000}")
+    private int negativeMaxEntries;
+
+    @PostConstruct
+    void loadBundled() {
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                codesLocation.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) continue;
+                for (String code : line.trim().split("\\s+")) {
+                    if (learn(code)) count++;
+                }
+            }
+        } catch (IOException e) {
+            if (strict) {
+                throw new IllegalStateException("Cannot load airport codes from " + codesLocation, e);
+            }
+            log.warn("⚠️ Could not load {}: {}", codesLocation, e.getMessage());
+        }
+        log.info("🛫 {} airport codes loaded from {}", count, codesLocation);
+        if (strict && count < strictMinCodes) {
+            // Danh sách thiếu + strict → từ chối cả sân bay thật, không tự hạ xuống chế độ probe
+            throw new IllegalStateException("Only " + count + " airport codes in " + codesLocation
+                    + ", app.iata.strict needs the full IATA list (>= " + strictMinCodes + ")."
+                    + " Set IATA_CODES_LOCATION or app.iata.strict=false");
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void learnFromDatabase() {
+        try {
+            airlineRepository.findDistinctDepIata().forEach(this::learn);
+            airlineRepository.findDistinctArrIata().forEach(this::learn);
+            log.info("🛫 Airport codes known: {}", size());
+        } catch (Exception e) {
+            log.warn("⚠️ Could not learn airport codes from DB: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Checked before any cache or upstream work, no allocation on the valid path
+     */
+    public Verdict check(String code) {
+        int index = indexOf(code);
+        if (index < 0) return Verdict.MALFORMED;
+        if (isSet(index)) return Verdict.VALID;
+        if (strict || isNegative(code.toUpperCase())) return Verdict.UNKNOWN;
+        // Mã hợp lệ về format, chưa biết → cho đi một lần, kết quả sync quyết định
+        return Verdict.VALID;
+    }
+
+    /**
+     * Record the outcome of a sync: non-empty → learned, empty for an unknown code → negative cached
+     */
+    public void recordSync(String code, boolean empty) {
+        int index = indexOf(code);
+        if (index < 0) return;
+        if (!empty) {
+            set(index);
+            return;
+        }
+        if (isSet(index)) return; // sân bay thật, chỉ là không có chuyến
+        String upper = code.toUpperCase();
+        negative.put(upper, System.currentTimeMillis() + negativeTtlSeconds * 1000L);
+        redisService.markNegative(upper, negativeTtlSeconds);
+        log.info("🚫 Unknown airport with no flights, negative cached: {}", upper);
+    }
+
+    public int size() {
+        int count = 0;
+        for (int i = 0; i < known.length(); i++) {
+            count += Long.bitCount(known.get(i));
+        }
+        return count;
+    }
+
+    private boolean isNegative(String code) {
+        Long expiresAt = negative.get(code);
+        if (expiresAt != null) {
+            if (expiresAt > System.currentTimeMillis()) return true;
+            negative.remove(code, expiresAt);
+        }
+        // Node khác đã thử mã này
+        long ttlMillis = redisService.negativeTtlMillis(code);
+        if (ttlMillis > 0) {
+            negative.put(code, System.currentTimeMillis() + ttlMillis);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean learn(String code) {
+        int index = indexOf(code);
+        if (index < 0) return false;
+        return set(index);
+    }
+
+    /**
+     * "SGN" → 0..17575, -1 when not exactly three ASCII letters
+     */
+    static int indexOf(String code) {
+        if (code == null || code.length() != 3) return -1;
+        int index = 0;
+        for (int i = 0; i < 3; i++) {
+            int c = code.charAt(i) | 0x20; // lower-case
+            if (c < 'a' || c > 'z') return -1;
+            index = index * 26 + (c - 'a');
+        }
+        return index;
+    }
+
+    private boolean isSet(int index) {
+        return (known.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    private boolean set(int index) {
+        long bit = 1L << index;
+        int word = index >>> 6;
+        long current;
+        do {
+            current = known.get(word);
+            if ((current & bit) != 0) return false;
+        } while (!known.compareAndSet(word, current, current | bit));
+        return true;
+    }
+}
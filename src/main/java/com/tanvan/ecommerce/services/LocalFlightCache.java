@@ -0,0 +1,159 @@
+package com.tanvan.ecommerce.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process (L1) cache in front of Redis.
+ *
+ * Entries younger than app.cache.l1.max-age-ms are served without a Redis round trip,
+ * older ones are still kept as a last-resort stale copy for the non-blocking read path.
+ *
+ * Boards are held as {@link CompactFlightTable}s (dictionary-encoded codes, epoch-minute
+ * times) so every active airport fits in memory, FlightView objects are built per read
+ * and never retained next to the table.
+ */
+@Service
+public class LocalFlightCache {
+
+    @Value("${app.cache.l1.max-age-ms:2000}")
+    private long maxAgeMillis;
+
+    @Value("${app.cache.l1.max-entries:1000}")
+    private int maxEntries;
+
+    // Dictionary chỉ tăng → thay mới khi quá lớn, entry cũ vẫn giữ dictionary của nó
+    @Value("${app.cache.l1.dictionary-max-entries:1000000}")
+    private int dictionaryMaxEntries;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private volatile CodeDictionary dictionary = new CodeDictionary();
+
+    public Entry get(String iata) {
+        return entries.get(iata.toUpperCase());
+    }
+
+    /**
+     * Store a board read from Redis or just synced. The same board version (same CacheMeta
+     * timestamp) keeps its table and only renews loadedAt, so hot airports re-read every
+     * max-age are not re-encoded each time.
+     */
+    public void put(String iata, AirlineService.CachedData cached) {
+        String code = iata.toUpperCase();
+        Entry current = entries.get(code);
+        if (current == null && entries.size() >= maxEntries) {
+            evictOldest();
+        }
+        CompactFlightTable table = current != null && current.meta.timestamp() == cached.getMeta().timestamp()
+                ? current.table
+                : CompactFlightTable.encode(cached.getData(), dictionary());
+        entries.put(code, new Entry(table, cached.getMeta(), System.currentTimeMillis(), false));
+    }
+
+    /**
+     * Entries currently held, read by the warm-start snapshot
+     */
+    public Map<String, Entry> entries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    /**
+     * Load an entry from the warm-start snapshot: never "recent", never overrides a newer put
+     */
+    void restore(String iata, CompactFlightTable table, AirlineService.CacheMeta meta) {
+        entries.putIfAbsent(iata.toUpperCase(), new Entry(table, meta, 0L, true));
+    }
+
+    /**
+     * Adopt the dictionary the snapshot was decoded with, so new entries share its codes
+     */
+    void useDictionary(CodeDictionary restored) {
+        dictionary = restored;
+    }
+
+    /**
+     * Dictionary new entries are encoded with, the snapshot writes its tables against it
+     */
+    CodeDictionary currentDictionary() {
+        return dictionary;
+    }
+
+    public void invalidate(String iata) {
+        entries.remove(iata.toUpperCase());
+    }
+
+    public void clear() {
+        entries.clear();
+        dictionary = new CodeDictionary();
+    }
+
+    private CodeDictionary dictionary() {
+        CodeDictionary current = dictionary;
+        if (current.size() >= dictionaryMaxEntries) {
+            current = new CodeDictionary();
+            dictionary = current;
+        }
+        return current;
+    }
+
+    private void evictOldest() {
+        entries.entrySet().stream()
+                .min((a, b) -> Long.compare(a.getValue().loadedAt(), b.getValue().loadedAt()))
+                .ifPresent(oldest -> entries.remove(oldest.getKey(), oldest.getValue()));
+    }
+
+    /**
+     * Cached airport + when it was loaded into this node
+     */
+    public class Entry {
+        private final CompactFlightTable table;
+        private final AirlineService.CacheMeta meta;
+        private final long loadedAt;
+        private final boolean restored;
+
+        Entry(CompactFlightTable table, AirlineService.CacheMeta meta, long loadedAt, boolean restored) {
+            this.table = table;
+            this.meta = meta;
+            this.loadedAt = loadedAt;
+            this.restored = restored;
+        }
+
+        /**
+         * Decoded view of the board (lazy lists over the compact table)
+         */
+        public AirlineService.CachedData cached() {
+            return new AirlineService.CachedData(table.lists(), meta);
+        }
+
+        CompactFlightTable table() {
+            return table;
+        }
+
+        AirlineService.CacheMeta meta() {
+            return meta;
+        }
+
+        public long loadedAt() {
+            return loadedAt;
+        }
+
+        /**
+         * Recent enough to skip Redis
+         */
+        public boolean isRecent() {
+            return System.currentTimeMillis() - loadedAt < maxAgeMillis;
+        }
+
+        /**
+         * Loaded from the warm-start snapshot, not yet replaced by Redis/AirLabs data
+         */
+        public boolean isRestored() {
+            return restored;
+        }
+    }
+}
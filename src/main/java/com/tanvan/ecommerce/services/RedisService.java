@@ -1,10 +1,25 @@
 package com.tanvan.ecommerce.services;
 
-import com.tanvan.ecommerce.entity.Airline;
+import com.tanvan.ecommerce.dto.FlightView;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -12,76 +27,352 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * Redis caching service for airline flight data
+ *
+ * Flight keys are namespaced by a generation counter: FLIGHTS:<gen>:{IATA}.
+ * Invalidating everything only bumps the counter, old keys are left to expire
+ * (or get removed by the SCAN based reaper) instead of a blocking FLUSHALL.
+ *
+ * The airport code is a hash tag, so an airport's data, metadata and lock
+ * live on the same slot in Redis Cluster. Reads use redisReadTemplate
+ * (replica preferred), writes and locks use the primary template.
+ *
+ * app.cache.layout selects how an airport board is stored:
+ *  - blob : FLIGHTS:<gen>:{IATA} = whole board, + :META (default)
+ *  - hash : FLIGHTS:<gen>:{IATA}:H, one field per flight ("D:"/"A:" + flight IATA + "_" + scheduled time)
+ *           + a "_meta" field; a sync only writes the flights that changed (version check +
+ *           HSET/HDEL/EXPIRE in one Lua script) and single flights can be read with HMGET
  */
+@Slf4j
 @Service
 public class RedisService {
 
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
-    private static final String TIMESTAMP_SUFFIX = ":TIMESTAMP";
+    @Autowired
+    @Qualifier("redisReadTemplate")
+    private RedisTemplate<String, Object> redisReadTemplate;
+
+    @Value("${app.redis.topology:standalone}")
+    private String topology;
+
+    private static final String META_SUFFIX = ":META";
+    private static final String HASH_SUFFIX = ":H";
+    private static final String HASH_META_FIELD = "_meta";
+    private static final String DEPARTURE_FIELD = "D:";
+    private static final String ARRIVAL_FIELD = "A:";
+
+    /*
+     * Hash layout write, atomic on the single key (cluster-safe, no MULTI/WATCH):
+     * KEYS[1] = airport hash
+     * ARGV[1] = serialized _meta the patch applies to, "" = replace the whole hash
+     * ARGV[2] = TTL seconds, ARGV[3] = n, then n field/value pairs to HSET, then fields to HDEL
+     * Returns 0 without writing when _meta is no longer the expected version.
+     */
+    private static final RedisScript<Long> PATCH_HASH_SCRIPT = new DefaultRedisScript<>("""
+            if ARGV[1] ~= '' then
+                if redis.call('HGET', KEYS[1], '_meta') ~= ARGV[1] then return 0 end
+            else
+                redis.call('DEL', KEYS[1])
+            end
+            local last = 3 + 2 * tonumber(ARGV[3])
+            for i = 4, last, 1000 do
+                redis.call('HSET', KEYS[1], unpack(ARGV, i, math.min(i + 999, last)))
+            end
+            for i = last + 1, #ARGV, 1000 do
+                redis.call('HDEL', KEYS[1], unpack(ARGV, i, math.min(i + 999, #ARGV)))
+            end
+            redis.call('EXPIRE', KEYS[1], ARGV[2])
+            return 1
+            """, Long.class);
+
+    @Value("${app.cache.layout:blob}")
+    private String layout;
+
+    private static final String FLIGHTS_PREFIX = "FLIGHTS:";
+    private static final String GENERATION_KEY = "FLIGHTS:GENERATION";
+
+    // Generation is re-read at most once per second, other nodes see a bump within that window
+    private static final long GENERATION_REFRESH_MILLIS = 1000;
+    private static final int REAPER_SCAN_COUNT = 500;
+
+    private volatile long generation = -1;
+    private volatile long generationReadAt = 0;
+
+    /*
+     * ===========================================================
+     * KEY NAMESPACE
+     * ============================================================
+     */
+
+    /**
+     * Cache key of an airport in the current generation, e.g. FLIGHTS:3:{SGN}
+     */
+    public String flightsKey(String iata) {
+        return FLIGHTS_PREFIX + currentGeneration() + ":{" + iata.toUpperCase() + "}";
+    }
+
+    /**
+     * Hash layout key of an airport, e.g. FLIGHTS:3:{SGN}:H
+     */
+    public String flightsHashKey(String iata) {
+        return flightsKey(iata) + HASH_SUFFIX;
+    }
+
+    /**
+     * Hash field of a flight on the departures / arrivals side of a board
+     */
+    public static String flightField(boolean isDeparture, String flightKey) {
+        return (isDeparture ? DEPARTURE_FIELD : ARRIVAL_FIELD) + flightKey;
+    }
+
+    /**
+     * flightIata + "_" + scheduled time of the side, same as AirlineService.uniqueKey
+     */
+    public static String flightKey(FlightView f, boolean isDeparture) {
+        return f.flightIata() + "_" + (isDeparture ? f.depTime() : f.arrTime());
+    }
+
+    /**
+     * Route entry derived from an airport's departures, same slot as the airport,
+     * e.g. FLIGHTS:3:{SGN}:ROUTE:HAN
+     */
+    public String routeKey(String from, String to) {
+        return flightsKey(from) + ":ROUTE:" + to.toUpperCase();
+    }
+
+    /**
+     * Negative cache entry of an unknown airport code (not generation scoped, short TTL)
+     */
+    public String negativeKey(String iata) {
+        return "FLIGHTS:NEG:{" + iata.toUpperCase() + "}";
+    }
 
     /**
-     * Save flights with TTL (Time To Live)
+     * Refresh lock of an airport, same slot as its cache keys
      */
-    public void saveFlightsWithTTL(String key, Map<String, List<Airline>> data, int ttlSeconds) {
+    public String flightsLockKey(String iata) {
+        return "LOCK:FLIGHTS:{" + iata.toUpperCase() + "}";
+    }
+
+    /**
+     * Current cache generation (INCRBY 0 reads the counter and creates it when missing)
+     */
+    public long currentGeneration() {
+        long now = System.currentTimeMillis();
+        if (generation < 0 || now - generationReadAt > GENERATION_REFRESH_MILLIS) {
+            try {
+                Long value = redisTemplate.opsForValue().increment(GENERATION_KEY, 0);
+                generation = value != null ? value : 0;
+                generationReadAt = now;
+            } catch (Exception e) {
+                log.warn("Cannot read cache generation, using {}: {}", generation, e.getMessage());
+                if (generation < 0) generation = 0;
+            }
+        }
+        return generation;
+    }
+
+    /**
+     * Save flights with TTL (Time To Live) taken from the cache metadata
+     */
+    public void saveFlightsWithTTL(String key, Map<String, List<FlightView>> data, AirlineService.CacheMeta meta) {
+        saveFlights(key, data, meta, meta.ttlSeconds());
+    }
+
+    /**
+     * Save flights with an explicit TTL (derived entries that must not outlive their source)
+     */
+    public void saveFlights(String key, Map<String, List<FlightView>> data, AirlineService.CacheMeta meta, long ttlSeconds) {
         try {
             // Save data
             redisTemplate.opsForValue().set(key, data, ttlSeconds, TimeUnit.SECONDS);
 
-            // Save timestamp separately for age calculation
-            long timestamp = System.currentTimeMillis();
-            redisTemplate.opsForValue().set(key + TIMESTAMP_SUFFIX, timestamp, ttlSeconds, TimeUnit.SECONDS);
+            // Save metadata (timestamp, freshness window, refresh cost) separately
+            redisTemplate.opsForValue().set(key + META_SUFFIX, meta, ttlSeconds, TimeUnit.SECONDS);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Get flights with timestamp information
+     * Get flights with their cache metadata in one round trip
      * Returns CachedData wrapper containing data and age
      */
     public AirlineService.CachedData getFlightsWithTimestamp(String key) {
         try {
-            Object data = redisTemplate.opsForValue().get(key);
-            Object timestampObj = redisTemplate.opsForValue().get(key + TIMESTAMP_SUFFIX);
-
-            if (data == null || timestampObj == null) {
+            List<Object> values = redisReadTemplate.opsForValue().multiGet(List.of(key, key + META_SUFFIX));
+            if (values == null || values.size() < 2 || values.get(0) == null || values.get(1) == null) {
                 return null;
             }
 
-            Map<String, List<Airline>> flights = (Map<String, List<Airline>>) data;
-            long timestamp = (Long) timestampObj;
+            Map<String, List<FlightView>> flights = (Map<String, List<FlightView>>) values.get(0);
+            AirlineService.CacheMeta meta = (AirlineService.CacheMeta) values.get(1);
 
-            return new AirlineService.CachedData(flights, timestamp);
+            return new AirlineService.CachedData(flights, meta);
         } catch (Exception e) {
             e.printStackTrace();
             return null;
         }
     }
 
+    /*
+     * ===========================================================
+     * AIRPORT BOARD - blob hoặc hash tùy app.cache.layout
+     * ============================================================
+     */
+
+    public boolean isHashLayout() {
+        return "hash".equals(layout);
+    }
+
     /**
-     * Get flights without timestamp (backward compatible)
+     * Write an airport board in the configured layout
+     * @param previous board this node cached before the sync (L1), the hash layout only
+     *                 writes the difference when Redis still holds that same version
      */
-    public Object getFlights(String key) {
+    public void saveAirport(String iata, Map<String, List<FlightView>> data, AirlineService.CacheMeta meta,
+                            AirlineService.CachedData previous) {
+        if (!isHashLayout()) {
+            saveFlightsWithTTL(flightsKey(iata), data, meta);
+            return;
+        }
+        String key = flightsHashKey(iata);
         try {
-            return redisTemplate.opsForValue().get(key);
+            Map<String, FlightView> fresh = hashFields(data);
+            if (previous != null) {
+                Map<String, FlightView> base = hashFields(previous.getData());
+                Map<String, Object> puts = new HashMap<>();
+                List<String> removes = new ArrayList<>();
+                fresh.forEach((field, view) -> {
+                    if (!view.equals(base.get(field))) puts.put(field, view);
+                });
+                for (String field : base.keySet()) {
+                    if (!fresh.containsKey(field)) removes.add(field);
+                }
+                // Đổi quá nửa board → ghi lại toàn bộ rẻ hơn
+                if (puts.size() + removes.size() <= fresh.size() / 2) {
+                    if (writeHash(key, previous.getMeta(), puts, removes, meta)) {
+                        log.debug("💾 Patched {}: {} field(s) written, {} removed", key, puts.size(), removes.size());
+                        return;
+                    }
+                    // Node khác đã ghi version khác từ lúc L1 được load → patch sẽ trộn hai board
+                    log.debug("🔀 {} changed since the previous version, rewriting", key);
+                }
+            }
+            writeHash(key, null, fresh, List.of(), meta);
+            log.debug("💾 Rewrote {}: {} field(s)", key, fresh.size());
         } catch (Exception e) {
-            e.printStackTrace();
+            log.warn("⚠️ Failed to save airport board {}: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * One PATCH_HASH_SCRIPT call on the airport hash
+     * @param expected version the patch applies to, null to replace the whole hash
+     * @return false when Redis no longer holds the expected version (nothing written)
+     */
+    @SuppressWarnings("unchecked")
+    private boolean writeHash(String key, AirlineService.CacheMeta expected, Map<String, ?> puts,
+                              List<String> removes, AirlineService.CacheMeta meta) {
+        RedisSerializer<Object> values = (RedisSerializer<Object>) redisTemplate.getHashValueSerializer();
+        List<byte[]> args = new ArrayList<>(3 + 2 * (puts.size() + 1) + removes.size());
+        args.add(expected != null ? values.serialize(expected) : new byte[0]);
+        args.add(utf8(String.valueOf(meta.ttlSeconds())));
+        args.add(utf8(String.valueOf(puts.size() + 1)));
+        for (Map.Entry<String, ?> put : puts.entrySet()) {
+            args.add(utf8(put.getKey()));
+            args.add(values.serialize(put.getValue()));
+        }
+        args.add(utf8(HASH_META_FIELD));
+        args.add(values.serialize(meta));
+        for (String field : removes) {
+            args.add(utf8(field));
+        }
+        Long applied = redisTemplate.execute(PATCH_HASH_SCRIPT, RedisSerializer.byteArray(),
+                new GenericToStringSerializer<>(Long.class), List.of(key), args.toArray());
+        return applied != null && applied == 1L;
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read an airport board in the configured layout, null on miss
+     */
+    public AirlineService.CachedData getAirport(String iata) {
+        if (!isHashLayout()) {
+            return getFlightsWithTimestamp(flightsKey(iata));
+        }
+        try {
+            Map<Object, Object> entries = redisReadTemplate.opsForHash().entries(flightsHashKey(iata));
+            if (!(entries.get(HASH_META_FIELD) instanceof AirlineService.CacheMeta meta)) {
+                return null;
+            }
+            List<FlightView> departures = new ArrayList<>();
+            List<FlightView> arrivals = new ArrayList<>();
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                String field = (String) entry.getKey();
+                if (field.startsWith(DEPARTURE_FIELD)) {
+                    departures.add((FlightView) entry.getValue());
+                } else if (field.startsWith(ARRIVAL_FIELD)) {
+                    arrivals.add((FlightView) entry.getValue());
+                }
+            }
+            return new AirlineService.CachedData(BoardViews.materialize(departures, arrivals), meta);
+        } catch (Exception e) {
+            log.warn("⚠️ Failed to read airport board FLIGHTS:{}: {}", iata, e.getMessage());
             return null;
         }
     }
 
     /**
-     * Save flights without TTL (uses Redis default)
+     * HMGET of single flights (hash layout), null when the airport is not cached
+     * @param fields flight fields, see flightField
      */
-    public void saveFlights(String key, Map<String, List<Airline>> data) {
+    public List<FlightView> getAirportFlights(String iata, List<String> fields) {
         try {
-            redisTemplate.opsForValue().set(key, data);
-            long timestamp = System.currentTimeMillis();
-            redisTemplate.opsForValue().set(key + TIMESTAMP_SUFFIX, timestamp);
+            List<Object> keys = new ArrayList<>(fields.size() + 1);
+            keys.add(HASH_META_FIELD);
+            keys.addAll(fields);
+            List<Object> values = redisReadTemplate.opsForHash().multiGet(flightsHashKey(iata), keys);
+            if (values == null || values.isEmpty() || values.get(0) == null) {
+                return null;
+            }
+            List<FlightView> flights = new ArrayList<>(fields.size());
+            for (int i = 1; i < values.size(); i++) {
+                if (values.get(i) instanceof FlightView f) flights.add(f);
+            }
+            return flights;
+        } catch (Exception e) {
+            log.warn("⚠️ Failed to read flights of FLIGHTS:{}: {}", iata, e.getMessage());
+            return null;
+        }
+    }
+
+    private static Map<String, FlightView> hashFields(Map<String, List<FlightView>> data) {
+        List<FlightView> departures = data.getOrDefault(BoardViews.DEPARTURES, List.of());
+        List<FlightView> arrivals = data.getOrDefault(BoardViews.ARRIVALS, List.of());
+        Map<String, FlightView> fields = new LinkedHashMap<>(departures.size() + arrivals.size());
+        for (FlightView f : departures) {
+            fields.put(flightField(true, flightKey(f, true)), f);
+        }
+        for (FlightView f : arrivals) {
+            fields.put(flightField(false, flightKey(f, false)), f);
+        }
+        return fields;
+    }
+
+    /**
+     * Get flights without timestamp (backward compatible)
+     */
+    public Object getFlights(String key) {
+        try {
+            return redisReadTemplate.opsForValue().get(key);
         } catch (Exception e) {
             e.printStackTrace();
+            return null;
         }
     }
 
@@ -91,7 +382,7 @@ public class RedisService {
     public void deleteFlights(String key) {
         try {
             redisTemplate.delete(key);
-            redisTemplate.delete(key + TIMESTAMP_SUFFIX);
+            redisTemplate.delete(key + META_SUFFIX);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -102,7 +393,7 @@ public class RedisService {
      */
     public boolean hasFlights(String key) {
         try {
-            return Boolean.TRUE.equals(redisTemplate.hasKey(key));
+            return Boolean.TRUE.equals(redisReadTemplate.hasKey(key));
         } catch (Exception e) {
             e.printStackTrace();
             return false;
@@ -110,13 +401,119 @@ public class RedisService {
     }
 
     /**
-     * Clear all flight caches
+     * Clear all flight caches in O(1) by moving to a new generation.
+     * Keys of the previous generation are no longer addressed and expire on their own.
      */
     public void clearAllFlights() {
         try {
-            redisTemplate.getConnectionFactory().getConnection().flushAll();
+            Long value = redisTemplate.opsForValue().increment(GENERATION_KEY);
+            if (value != null) {
+                generation = value;
+                generationReadAt = System.currentTimeMillis();
+            }
+            log.info("🧹 Flight cache generation bumped to {}", value);
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("❌ Failed to bump cache generation {}: {}", GENERATION_KEY, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Clear the cache of a group of airports (one DEL for all their keys)
+     */
+    public void clearFlights(Collection<String> iatas) {
+        try {
+            List<String> keys = new ArrayList<>(iatas.size() * 3);
+            for (String iata : iatas) {
+                String key = flightsKey(iata);
+                keys.add(key);
+                keys.add(key + META_SUFFIX);
+                keys.add(key + HASH_SUFFIX);
+            }
+            redisTemplate.delete(keys);
+        } catch (Exception e) {
+            log.warn("⚠️ Failed to clear cache of {}: {}", iatas, e.getMessage());
+        }
+    }
+
+    /**
+     * Incrementally remove keys left behind by older generations.
+     * SCAN walks the keyspace in small batches so Redis is never blocked.
+     */
+    @Scheduled(fixedDelayString = "${app.cache.reaper-interval-ms:600000}", initialDelay = 60000)
+    public void reapOldGenerations() {
+        if ("cluster".equals(topology)) {
+            return; // SCAN is per node in a cluster, old generations just expire on their TTL
+        }
+        long current = currentGeneration();
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(FLIGHTS_PREFIX + "*")
+                .count(REAPER_SCAN_COUNT)
+                .build();
+
+        List<String> batch = new ArrayList<>(REAPER_SCAN_COUNT);
+        long removed = 0;
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                String key = cursor.next();
+                Long keyGeneration = generationOf(key);
+                if (keyGeneration != null && keyGeneration < current) {
+                    batch.add(key);
+                }
+                if (batch.size() >= REAPER_SCAN_COUNT) {
+                    removed += deleteBatch(batch);
+                }
+            }
+            removed += deleteBatch(batch);
+        } catch (Exception e) {
+            log.warn("Cache reaper stopped: {}", e.getMessage());
+        }
+
+        if (removed > 0) {
+            log.info("🧹 Reaped {} flight keys older than generation {}", removed, current);
+        }
+    }
+
+    private long deleteBatch(List<String> batch) {
+        if (batch.isEmpty()) return 0;
+        Long count = redisTemplate.delete(batch);
+        batch.clear();
+        return count != null ? count : 0;
+    }
+
+    /**
+     * FLIGHTS:{gen}:... → gen, null for keys outside the namespace (e.g. the counter itself)
+     */
+    private Long generationOf(String key) {
+        int start = FLIGHTS_PREFIX.length();
+        int end = key.indexOf(':', start);
+        if (end < 0) return null;
+        try {
+            return Long.parseLong(key.substring(start, end));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Remember an unknown airport code for ttlSeconds on every node
+     */
+    public void markNegative(String iata, int ttlSeconds) {
+        try {
+            redisTemplate.opsForValue().set(negativeKey(iata), 1, ttlSeconds, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("⚠️ Failed to save negative cache entry {}: {}", negativeKey(iata), e.getMessage());
+        }
+    }
+
+    /**
+     * Remaining negative cache TTL in millis, 0 when the code is not negative cached
+     */
+    public long negativeTtlMillis(String iata) {
+        try {
+            Long ttl = redisReadTemplate.getExpire(negativeKey(iata), TimeUnit.MILLISECONDS);
+            return ttl != null && ttl > 0 ? ttl : 0;
+        } catch (Exception e) {
+            return 0;
         }
     }
 
@@ -0,0 +1,211 @@
+package com.tanvan.ecommerce.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Background refresh queue.
+ *
+ * - At most one pending task per airport: a new request for a queued airport only
+ *   raises its priority, a request for an airport being refreshed right now is dropped.
+ * - Workers always take the highest priority (popularity × staleness) first.
+ * - When the queue is full the lowest priority task is shed (the new one if it is the lowest),
+ *   nothing is thrown at the request thread.
+ *
+ * Metrics: flights.refresh.pending / running (gauges), flights.refresh.wait / duration (timers),
+ * flights.refresh.submitted / deduplicated / shed (counters).
+ */
+@Slf4j
+@Service
+public class RefreshScheduler {
+
+    private static final Comparator<Task> HIGHEST_FIRST = Comparator
+            .comparingDouble(Task::priority).reversed()
+            .thenComparingLong(Task::sequence);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final TreeSet<Task> queue = new TreeSet<>(HIGHEST_FIRST);
+    private final Map<String, Task> pending = new HashMap<>();
+    private final Set<String> running = new HashSet<>();
+    private final AtomicInteger runningCount = new AtomicInteger();
+    private final List<Thread> workers = new ArrayList<>();
+    private long sequence;
+    private volatile boolean stopped;
+
+    @Value("${app.refresh.workers:5}")
+    private int workerCount;
+
+    @Value("${app.refresh.max-pending:200}")
+    private int maxPending;
+
+    private final Timer waitTimer;
+    private final Timer durationTimer;
+    private final Counter submitted;
+    private final Counter deduplicated;
+    private final Counter shed;
+
+    public RefreshScheduler(MeterRegistry registry) {
+        Gauge.builder("flights.refresh.pending", this, RefreshScheduler::pendingCount)
+                .description("Airports waiting for a background refresh")
+                .register(registry);
+        Gauge.builder("flights.refresh.running", runningCount, AtomicInteger::get)
+                .description("Background refreshes in progress")
+                .register(registry);
+        this.waitTimer = Timer.builder("flights.refresh.wait")
+                .description("Time a refresh spent queued")
+                .register(registry);
+        this.durationTimer = Timer.builder("flights.refresh.duration")
+                .description("Time a refresh took to run")
+                .register(registry);
+        this.submitted = registry.counter("flights.refresh.submitted");
+        this.deduplicated = registry.counter("flights.refresh.deduplicated");
+        this.shed = registry.counter("flights.refresh.shed");
+    }
+
+    @PostConstruct
+    public void start() {
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::work, "refresh-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        log.info("🔁 Refresh scheduler started ({} workers, max {} pending)", workerCount, maxPending);
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+        workers.forEach(Thread::interrupt);
+        lock.lock();
+        try {
+            queue.clear();
+            pending.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queue a refresh
+     * @return false when the airport is already being refreshed or the task was shed
+     */
+    public boolean submit(String iata, double priority, Runnable refresh) {
+        String code = iata.toUpperCase();
+        submitted.increment();
+        lock.lock();
+        try {
+            if (running.contains(code)) {
+                deduplicated.increment();
+                return false;
+            }
+            Task queued = pending.get(code);
+            if (queued != null) {
+                deduplicated.increment();
+                if (priority > queued.priority()) {
+                    // Giữ thời điểm enqueue cũ để đo wait chính xác
+                    replace(queued, new Task(code, priority, sequence++, queued.enqueuedAt(), queued.refresh()));
+                }
+                return true;
+            }
+            if (pending.size() >= maxPending) {
+                Task lowest = queue.last();
+                if (lowest.priority() >= priority) {
+                    shed.increment();
+                    log.debug("⏭️ Refresh shed (queue full): {}", code);
+                    return false;
+                }
+                queue.remove(lowest);
+                pending.remove(lowest.iata());
+                shed.increment();
+                log.debug("⏭️ Refresh shed (queue full): {}", lowest.iata());
+            }
+            Task task = new Task(code, priority, sequence++, System.nanoTime(), refresh);
+            queue.add(task);
+            pending.put(code, task);
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int pendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* ==================================================================
+       PRIVATE METHODS
+    ================================================================== */
+
+    private void replace(Task old, Task updated) {
+        queue.remove(old);
+        queue.add(updated);
+        pending.put(updated.iata(), updated);
+    }
+
+    private void work() {
+        while (!stopped) {
+            Task task;
+            try {
+                task = take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            waitTimer.record(System.nanoTime() - task.enqueuedAt(), TimeUnit.NANOSECONDS);
+            runningCount.incrementAndGet();
+            long startedAt = System.nanoTime();
+            try {
+                task.refresh().run();
+            } catch (Exception e) {
+                log.error("❌ Refresh task failed: FLIGHTS:{} - {}", task.iata(), e.getMessage(), e);
+            } finally {
+                durationTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                runningCount.decrementAndGet();
+                lock.lock();
+                try {
+                    running.remove(task.iata());
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    private Task take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (queue.isEmpty()) {
+                notEmpty.await();
+            }
+            Task task = queue.pollFirst();
+            pending.remove(task.iata());
+            running.add(task.iata());
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private record Task(String iata, double priority, long sequence, long enqueuedAt, Runnable refresh) {
+    }
+}
@@ -0,0 +1,61 @@
+package com.tanvan.ecommerce.services;
+
+import com.tanvan.ecommerce.dto.ImportReport;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * CLI import mode:
+ *   java -jar app.jar --app.import.file=/data/schedules-2026-01-01.json [--app.warmup.enabled=false]
+ * Imports the dump on startup and exits (app.import.exit-after=false keeps the app running).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ScheduleImportRunner implements ApplicationRunner {
+
+    private final ScheduleImportService importService;
+    private final ApplicationContext context;
+
+    @Value("${app.import.file:}")
+    private String file;
+
+    @Value("${app.import.format:}")
+    private String format;
+
+    @Value("${app.import.exit-after:true}")
+    private boolean exitAfter;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (file.isBlank()) return;
+
+        Path path = Path.of(file);
+        String dumpFormat = ScheduleImportService.formatOf(format.isBlank() ? path.getFileName().toString() : format);
+        log.info("📥 Importing {} ({})", path, dumpFormat);
+
+        int exitCode = 0;
+        try (InputStream in = Files.newInputStream(path)) {
+            ImportReport report = importService.importDump(in, dumpFormat);
+            if (report.failedChunks() > 0) exitCode = 1;
+        } catch (Exception e) {
+            log.error("❌ Import failed: {}", e.getMessage(), e);
+            exitCode = 1;
+        }
+
+        if (exitAfter) {
+            int code = exitCode;
+            System.exit(SpringApplication.exit(context, () -> code));
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package com.tanvan.ecommerce.services;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tanvan.ecommerce.dto.ImportReport;
+import com.tanvan.ecommerce.entity.Airline;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Streaming import of AirLabs schedule dumps (JSON or CSV) into airline_schedule.
+ *
+ *  - the dump is read record by record (Jackson streaming / CSV reader), never fully in memory
+ *  - each record goes through AirlineService.mapToEntity, same validation as a sync
+ *  - every chunk-size rows: COPY into a temp stage table, then one INSERT ... ON CONFLICT
+ *    (unique_departure) upsert, delay rollup deltas in the same transaction. Duplicates within
+ *    the chunk (same departure or same arrival of a flight) keep the row that comes last in the dump
+ *  - at the end: cache of every touched airport rebuilt, search index rebuilt
+ *
+ * JSON: AirLabs response ({"response": [...]}) or a plain array.
+ * CSV: header row with AirLabs field names (flight_iata, dep_iata, dep_time, ...).
+ * Change events are not published, an import is a backfill rather than live changes.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ScheduleImportService {
+
+    public static final String FORMAT_JSON = "json";
+    public static final String FORMAT_CSV = "csv";
+
+    private static final TypeReference<Map<String, Object>> RECORD = new TypeReference<>() {};
+
+    // Cột số trong CSV (mapToEntity đọc chúng như Number)
+    private static final Set<String> LONG_FIELDS = Set.of("dep_time_ts", "arr_time_ts");
+    private static final Set<String> INT_FIELDS = Set.of("duration", "delayed");
+
+    private static final String COLUMNS = "id, flight_number, flight_iata, airline_iata, "
+            + "dep_iata, dep_terminal, dep_gate, dep_time, dep_actual, dep_time_ts, "
+            + "arr_iata, arr_terminal, arr_gate, arr_time, arr_actual, arr_time_ts, status, duration, delayed";
+
+    // seq: thứ tự row trong dump (COPY lấy nextval theo thứ tự đọc), row sau thắng row trước
+    private static final String CREATE_STAGE =
+            "CREATE TEMP TABLE import_stage (LIKE airline_schedule INCLUDING DEFAULTS, seq bigserial) ON COMMIT DROP";
+
+    private static final String COPY_STAGE =
+            "COPY import_stage (" + COLUMNS + ") FROM STDIN WITH (FORMAT csv)";
+
+    // Row mới nhất / (flight_iata, dep_time), rồi / (flight_iata, arr_time) trong chính stage;
+    // bỏ row đụng unique_arrival của một row đã có. NULL không đụng unique → mỗi row NULL giữ riêng
+    private static final String STAGED_ROWS = """
+            FROM (SELECT DISTINCT ON (flight_iata, arr_time, CASE WHEN arr_time IS NULL THEN seq END) *
+                  FROM (SELECT DISTINCT ON (flight_iata, dep_time, CASE WHEN dep_time IS NULL THEN seq END) *
+                        FROM import_stage
+                        ORDER BY flight_iata, dep_time, CASE WHEN dep_time IS NULL THEN seq END, seq DESC) d
+                  ORDER BY flight_iata, arr_time, CASE WHEN arr_time IS NULL THEN seq END, seq DESC) s
+            WHERE NOT EXISTS (SELECT 1 FROM airline_schedule o
+                              WHERE o.flight_iata = s.flight_iata AND o.arr_time = s.arr_time
+                                AND o.dep_time IS DISTINCT FROM s.dep_time)
+            """;
+
+    // Giá trị cũ của row sắp bị update → delta cho delay rollup
+    private static final String PREVIOUS = "SELECT s.airline_iata, s.flight_iata, s.dep_iata, s.dep_time, "
+            + "s.arr_iata, s.arr_time, s.status, s.delayed, "
+            + "t.id, t.airline_iata, t.dep_iata, t.arr_iata, t.arr_time, t.status, t.delayed "
+            + "FROM (SELECT s.* " + STAGED_ROWS + ") s "
+            + "LEFT JOIN airline_schedule t ON t.flight_iata = s.flight_iata AND t.dep_time = s.dep_time";
+
+    private static final String UPSERT = "INSERT INTO airline_schedule (" + COLUMNS + ") "
+            + "SELECT " + COLUMNS + " " + STAGED_ROWS + """
+            ON CONFLICT ON CONSTRAINT unique_departure DO UPDATE SET
+                dep_gate    = EXCLUDED.dep_gate,
+                dep_actual  = EXCLUDED.dep_actual,
+                arr_gate    = EXCLUDED.arr_gate,
+                arr_actual  = EXCLUDED.arr_actual,
+                status      = EXCLUDED.status,
+                delayed     = EXCLUDED.delayed,
+                dep_time_ts = EXCLUDED.dep_time_ts,
+                arr_time_ts = EXCLUDED.arr_time_ts
+            """;
+
+    private final AirlineService airlineService;
+    private final DelayRollupService delayRollups;
+    private final FlightSearchIndex searchIndex;
+    private final DataSource dataSource;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${app.import.chunk-size:5000}")
+    private int chunkSize;
+
+    /**
+     * "dump.csv" / "text/csv" → csv, anything else json
+     */
+    public static String formatOf(String nameOrContentType) {
+        return nameOrContentType != null && nameOrContentType.toLowerCase().contains(FORMAT_CSV) ? FORMAT_CSV : FORMAT_JSON;
+    }
+
+    /**
+     * Import a dump, blocking until every chunk is loaded and the caches are rebuilt
+     */
+    public ImportReport importDump(InputStream in, String format) throws IOException {
+        long startedAt = System.currentTimeMillis();
+        Import run = new Import();
+
+        Consumer<Map<String, Object>> sink = record -> {
+            run.rowsRead++;
+            Airline a = airlineService.mapToEntity(record);
+            if (a == null || a.getFlightIata() == null) {
+                run.rowsRejected++;
+                return;
+            }
+            run.chunk.add(a);
+            if (run.chunk.size() >= chunkSize) flush(run);
+        };
+
+        if (FORMAT_CSV.equals(format)) {
+            readCsv(in, sink);
+        } else {
+            readJson(in, sink);
+        }
+        flush(run);
+
+        // Cache của các airport bị ảnh hưởng + search index
+        for (String iata : run.airports) {
+            try {
+                airlineService.rebuildCache(iata, 0, startedAt);
+            } catch (RuntimeException e) {
+                log.warn("⚠️ Cache rebuild after import failed: FLIGHTS:{} - {}", iata, e.getMessage());
+            }
+        }
+        searchIndex.rebuild();
+
+        long millis = Math.max(1, System.currentTimeMillis() - startedAt);
+        ImportReport report = new ImportReport(format, run.rowsRead, run.rowsRejected, run.rowsLoaded,
+                run.chunks, run.failedChunks, run.airports.size(), millis, run.rowsLoaded * 1000 / millis);
+        log.info("📥 Import finished: {} rows loaded ({} rejected, {} failed chunks) in {} ms, {} rows/s, {} airports",
+                report.rowsLoaded(), report.rowsRejected(), report.failedChunks(), millis,
+                report.rowsPerSecond(), report.airports());
+        return report;
+    }
+
+    /*
+     * ===========================================================
+     * LOAD - COPY vào stage + upsert, một transaction / chunk
+     * ============================================================
+     */
+
+    private void flush(Import run) {
+        if (run.chunk.isEmpty()) return;
+        List<Airline> rows = run.chunk;
+        run.chunk = new ArrayList<>(chunkSize);
+        run.chunks++;
+        try {
+            Integer loaded = transactionTemplate.execute(status -> {
+                Connection con = DataSourceUtils.getConnection(dataSource);
+                try {
+                    try (Statement st = con.createStatement()) {
+                        st.execute(CREATE_STAGE);
+                    }
+                    con.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_STAGE, new StringReader(toCsv(rows)));
+
+                    AirlineService.SyncResult delta = previousValues(con);
+                    int count;
+                    try (Statement st = con.createStatement()) {
+                        count = st.executeUpdate(UPSERT);
+                    }
+                    delayRollups.apply(delta);
+                    return count;
+                } catch (SQLException | IOException e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+            });
+            run.rowsLoaded += loaded != null ? loaded : 0;
+            for (Airline a : rows) {
+                if (a.getDepIata() != null) run.airports.add(a.getDepIata().toUpperCase());
+                if (a.getArrIata() != null) run.airports.add(a.getArrIata().toUpperCase());
+            }
+            log.debug("📥 Chunk {} loaded: {} rows", run.chunks, loaded);
+        } catch (RuntimeException e) {
+            run.failedChunks++;
+            log.error("❌ Import chunk {} failed ({} rows): {}", run.chunks, rows.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Staged rows split into inserts and updates (with their current values)
+     */
+    private AirlineService.SyncResult previousValues(Connection con) throws SQLException {
+        List<Airline> inserted = new ArrayList<>();
+        List<Airline> updated = new ArrayList<>();
+        List<Airline> previous = new ArrayList<>();
+        try (Statement st = con.createStatement(); ResultSet rs = st.executeQuery(PREVIOUS)) {
+            while (rs.next()) {
+                Airline fresh = rollupRow(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                        rs.getString(5), rs.getString(6), rs.getString(7), (Integer) rs.getObject(8));
+                if (rs.getString(9) == null) {
+                    inserted.add(fresh);
+                } else {
+                    updated.add(fresh);
+                    previous.add(rollupRow(rs.getString(10), rs.getString(2), rs.getString(11), rs.getString(4),
+                            rs.getString(12), rs.getString(13), rs.getString(14), (Integer) rs.getObject(15)));
+                }
+            }
+        }
+        return new AirlineService.SyncResult(inserted, updated, List.of(), previous);
+    }
+
+    private static Airline rollupRow(String airline, String flight, String dep, String depTime,
+                                     String arr, String arrTime, String status, Integer delayed) {
+        Airline a = new Airline();
+        a.setAirlineIata(airline);
+        a.setFlightIata(flight);
+        a.setDepIata(dep);
+        a.setDepTime(depTime);
+        a.setArrIata(arr);
+        a.setArrTime(arrTime);
+        a.setStatus(status);
+        a.setDelayed(delayed);
+        return a;
+    }
+
+    /**
+     * COPY csv: quoted text, empty unquoted field = NULL
+     */
+    private static String toCsv(List<Airline> rows) {
+        StringBuilder sb = new StringBuilder(rows.size() * 200);
+        for (Airline a : rows) {
+            csv(sb, UUID.randomUUID().toString()).append(',');
+            csv(sb, a.getFlightNumber()).append(',');
+            csv(sb, a.getFlightIata()).append(',');
+            csv(sb, a.getAirlineIata()).append(',');
+            csv(sb, a.getDepIata()).append(',');
+            csv(sb, a.getDepTerminal()).append(',');
+            csv(sb, a.getDepGate()).append(',');
+            csv(sb, a.getDepTime()).append(',');
+            csv(sb, a.getDepActual()).append(',');
+            csv(sb, a.getDepTimeTs()).append(',');
+            csv(sb, a.getArrIata()).append(',');
+            csv(sb, a.getArrTerminal()).append(',');
+            csv(sb, a.getArrGate()).append(',');
+            csv(sb, a.getArrTime()).append(',');
+            csv(sb, a.getArrActual()).append(',');
+            csv(sb, a.getArrTimeTs()).append(',');
+            csv(sb, a.getStatus()).append(',');
+            csv(sb, a.getDuration()).append(',');
+            csv(sb, a.getDelayed()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static StringBuilder csv(StringBuilder sb, Object value) {
+        if (value == null) return sb;
+        if (value instanceof Number) return sb.append(value);
+        return sb.append('"').append(value.toString().replace("\"", "\"\"")).append('"');
+    }
+
+    /*
+     * ===========================================================
+     * READ - streaming JSON / CSV
+     * ============================================================
+     */
+
+    private void readJson(InputStream in, Consumer<Map<String, Object>> sink) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            // Mảng đầu tiên: cả file hoặc field "response" của AirLabs
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.START_ARRAY) {
+                if (token == JsonToken.FIELD_NAME && !"response".equals(parser.currentName())) {
+                    parser.nextToken();
+                    parser.skipChildren();
+                }
+            }
+            if (token == null) return;
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                sink.accept(parser.readValueAs(RECORD));
+            }
+        }
+    }
+
+    private void readCsv(InputStream in, Consumer<Map<String, Object>> sink) throws IOException {
+        try (Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            List<String> header = readCsvRecord(reader);
+            if (header == null) return;
+            List<String> fields;
+            while ((fields = readCsvRecord(reader)) != null) {
+                if (fields.size() == 1 && fields.get(0).isEmpty()) continue; // dòng trống
+                Map<String, Object> record = new HashMap<>();
+                for (int i = 0; i < header.size() && i < fields.size(); i++) {
+                    record.put(header.get(i).trim(), csvValue(header.get(i).trim(), fields.get(i)));
+                }
+                sink.accept(record);
+            }
+        }
+    }
+
+    private static Object csvValue(String name, String raw) {
+        if (raw.isEmpty()) return null;
+        try {
+            if (LONG_FIELDS.contains(name)) return Long.parseLong(raw.trim());
+            if (INT_FIELDS.contains(name)) return Integer.parseInt(raw.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return raw;
+    }
+
+    /**
+     * One RFC 4180 record (quoted fields may contain commas, quotes and newlines), null at EOF
+     */
+    static List<String> readCsvRecord(Reader reader) throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int c = reader.read();
+        if (c == -1) return null;
+        while (c != -1) {
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (next == -1) break;
+                        reader.reset();
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private final class Import {
+        long rowsRead;
+        long rowsRejected;
+        long rowsLoaded;
+        int chunks;
+        int failedChunks;
+        List<Airline> chunk = new ArrayList<>(chunkSize);
+        final Set<String> airports = new TreeSet<>();
+    }
+}
@@ -0,0 +1,194 @@
+package com.tanvan.ecommerce.services;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tanvan.ecommerce.dto.FlightView;
+import com.tanvan.ecommerce.services.FlightResponseRenderer.WireFormat;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.io.Resource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Warm-up before the instance takes traffic.
+ *
+ * Runs as an ApplicationRunner, so the readiness probe (/actuator/health/readiness)
+ * only flips to ACCEPTING_TRAFFIC after it returns:
+ *  1. open DB connections up to minimum-idle (primary + read-only route)
+ *  2. connect both Redis factories (Lettuce connect + SSL handshake)
+ *  3. open the upstream AirLabs connection
+ *  4. run mapping → diff → board views → JSON/CBOR/Redis serialization over a bundled
+ *     payload until the hot paths are JIT-compiled (bounded by iterations and max-millis)
+ * Every step is best effort: a failure is logged and never blocks startup.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StartupWarmup implements ApplicationRunner {
+
+    private final DataSource dataSource;
+    private final RedisConnectionFactory redisConnectionFactory;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final AirlineService airlineService;
+    private final FlightResponseRenderer responseRenderer;
+
+    @Autowired
+    @Qualifier("redisReadTemplate")
+    private RedisTemplate<String, Object> redisReadTemplate;
+
+    @Value("${app.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.warmup.iterations:300}")
+    private int iterations;
+
+    @Value("${app.warmup.max-millis:20000}")
+    private long maxMillis;
+
+    @Value("${app.warmup.sample:classpath:warmup/schedules-sample.json}")
+    private Resource sample;
+
+    @Value("${spring.datasource.hikari.minimum-idle:5}")
+    private int minimumIdle;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) return;
+        long startedAt = System.currentTimeMillis();
+
+        step("database pool", this::warmDatabase);
+        step("redis", this::warmRedis);
+        step("upstream", airlineService::warmUpstream);
+        step("hot paths", this::warmHotPaths);
+
+        log.info("🔥 Warm-up finished in {} ms", System.currentTimeMillis() - startedAt);
+    }
+
+    /* ==================================================================
+       PRIVATE METHODS
+    ================================================================== */
+
+    private void step(String name, Runnable warmup) {
+        long startedAt = System.currentTimeMillis();
+        try {
+            warmup.run();
+            log.info("🔥 Warm-up {}: {} ms", name, System.currentTimeMillis() - startedAt);
+        } catch (Exception e) {
+            log.warn("⚠️ Warm-up {} failed: {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * Hold minimum-idle connections at the same time so the pool really creates them,
+     * on both the primary and the read-only (replica) route
+     */
+    private void warmDatabase() {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<CompletableFuture<Connection>> opened = new ArrayList<>();
+            for (int i = 0; i < minimumIdle; i++) {
+                opened.add(CompletableFuture.supplyAsync(() -> openConnection(false), executor));
+                opened.add(CompletableFuture.supplyAsync(() -> openConnection(true), executor));
+            }
+            // Đợi tất cả rồi mới trả về pool, kể cả khi một số connection lỗi
+            CompletableFuture.allOf(opened.toArray(CompletableFuture[]::new)).exceptionally(e -> null).join();
+            int failed = 0;
+            for (CompletableFuture<Connection> future : opened) {
+                if (future.isCompletedExceptionally()) {
+                    failed++;
+                    continue;
+                }
+                try (Connection ignored = future.join()) {
+                    // trả connection về pool
+                } catch (SQLException e) {
+                    log.debug("Close warm-up connection failed: {}", e.getMessage());
+                }
+            }
+            if (failed > 0) {
+                throw new IllegalStateException(failed + " of " + opened.size() + " connections failed");
+            }
+        }
+    }
+
+    private Connection openConnection(boolean readOnly) {
+        try {
+            Connection connection = dataSource.getConnection();
+            connection.setReadOnly(readOnly);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SELECT 1");
+            }
+            return connection;
+        } catch (SQLException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    private void warmRedis() {
+        ping(redisConnectionFactory);
+        // Standalone: template đọc dùng chung factory chính
+        RedisConnectionFactory readFactory = redisReadTemplate.getConnectionFactory();
+        if (readFactory != null && readFactory != redisConnectionFactory) {
+            ping(readFactory);
+        }
+    }
+
+    private void ping(RedisConnectionFactory factory) {
+        try (RedisConnection connection = factory.getConnection()) {
+            connection.ping();
+        }
+    }
+
+    private void warmHotPaths() {
+        List<Map<String, Object>> flights = readSample();
+        long deadline = System.currentTimeMillis() + maxMillis;
+        CodeDictionary dictionary = new CodeDictionary();
+        SortedSet<String> boardFields = responseRenderer.parseFields(FlightResponseRenderer.BOARD_FIELDS);
+
+        int rounds = 0;
+        while (rounds < iterations && System.currentTimeMillis() < deadline) {
+            Map<String, List<FlightView>> board = airlineService.warmUp(flights, rounds % 2 == 0);
+            Map<String, List<FlightView>> response = BoardViews.departuresAndArrivals(board);
+            for (WireFormat format : WireFormat.values()) {
+                responseRenderer.render(response, null, null, format);
+            }
+            responseRenderer.render(response, boardFields, null, WireFormat.JSON);
+            redisTemplate.getValueSerializer().serialize(board);
+            CompactFlightTable.encode(board, dictionary).lists()
+                    .get(BoardViews.DEPARTURES).forEach(FlightView::flightIata);
+            rounds++;
+        }
+        log.debug("Hot path warm-up: {} rounds over {} flights", rounds, flights.size());
+    }
+
+    private List<Map<String, Object>> readSample() {
+        try (InputStream in = sample.getInputStream()) {
+            Map<String, Object> body = new ObjectMapper().readValue(in, new TypeReference<>() {
+            });
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> flights = (List<Map<String, Object>>) body.get("response");
+            return flights != null ? flights : List.of();
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot read warm-up sample " + sample + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.tanvan.ecommerce.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AIMD concurrency limiter driven by measured latency.
+ *
+ * The limit grows by one while calls complete within tolerance × the lowest latency
+ * seen (no queueing downstream) and the limit is actually used, and is multiplied by
+ * backoffRatio when a call is slow or fails. The lowest latency is re-learned every
+ * minRttWindow samples so a permanently slower backend is not treated as overloaded forever.
+ * Callers that find the limit reached get no permit and must fail fast or fall back.
+ */
+public final class AdaptiveConcurrencyLimiter {
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double backoffRatio;
+    private final int minRttWindow;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+    private volatile double limit;
+    private long minRttNanos = Long.MAX_VALUE;
+    private long nextMinRttNanos = Long.MAX_VALUE;
+    private int samples;
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+                                      double tolerance, double backoffRatio, int minRttWindow) {
+        this.name = name;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.backoffRatio = backoffRatio;
+        this.minRttWindow = minRttWindow;
+    }
+
+    /**
+     * Permit for one call, null when the limit is reached
+     */
+    public Permit tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= (int) limit) return null;
+            if (inflight.compareAndSet(current, current + 1)) {
+                return new Permit(System.nanoTime(), current + 1);
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    // package-private: unit tests feed synthetic latencies
+    synchronized void onSample(long rttNanos, int inflightAtStart, boolean dropped) {
+        // Cửa sổ min RTT: học lại sau mỗi minRttWindow sample
+        nextMinRttNanos = Math.min(nextMinRttNanos, rttNanos);
+        if (++samples >= minRttWindow) {
+            minRttNanos = nextMinRttNanos;
+            nextMinRttNanos = Long.MAX_VALUE;
+            samples = 0;
+        }
+        minRttNanos = Math.min(minRttNanos, rttNanos);
+
+        if (dropped || rttNanos > minRttNanos * tolerance) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else if (inflightAtStart * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1);
+        }
+    }
+
+    /**
+     * One acquired slot, release exactly once
+     */
+    public final class Permit {
+        private long startedAt;
+        private final int inflightAtStart;
+        private boolean released;
+
+        private Permit(long startedAt, int inflightAtStart) {
+            this.startedAt = startedAt;
+            this.inflightAtStart = inflightAtStart;
+        }
+
+        /**
+         * The protected call starts now: the permit was reserved before unrelated work
+         * (e.g. an upstream fetch) that must not count in the latency sample
+         */
+        public void startClock() {
+            startedAt = System.nanoTime();
+        }
+
+        /**
+         * Call completed normally, its latency feeds the limit
+         */
+        public void success() {
+            release(false);
+        }
+
+        /**
+         * Call failed or timed out, the limit backs off
+         */
+        public void dropped() {
+            release(true);
+        }
+
+        /**
+         * The protected call never ran or failed for a reason unrelated to this limiter
+         * (another limiter, upstream error): free the slot without a latency sample
+         */
+        public void ignore() {
+            if (released) return;
+            released = true;
+            inflight.decrementAndGet();
+        }
+
+        private void release(boolean dropped) {
+            if (released) return;
+            released = true;
+            inflight.decrementAndGet();
+            onSample(System.nanoTime() - startedAt, inflightAtStart, dropped);
+        }
+    }
+
+    /**
+     * Thrown by code paths that have no fallback of their own when the limit is reached
+     */
+    public static class LimitExceededException extends RuntimeException {
+        public LimitExceededException(String limiter) {
+            super("Concurrency limit reached: " + limiter);
+        }
+    }
+}
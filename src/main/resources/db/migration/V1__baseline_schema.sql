@@ -0,0 +1,49 @@
+-- Baseline schema (trước đây do Hibernate ddl-auto=update tạo ra).
+-- Idempotent: chạy được cả trên database mới lẫn database đã có bảng từ ddl-auto.
+
+CREATE TABLE IF NOT EXISTS airline_schedule (
+    id            VARCHAR(255) PRIMARY KEY,
+    flight_number VARCHAR(255),
+    flight_iata   VARCHAR(255),
+    airline_iata  VARCHAR(255),
+    dep_iata      VARCHAR(255),
+    dep_terminal  VARCHAR(255),
+    dep_gate      VARCHAR(255),
+    dep_time      VARCHAR(255),
+    dep_actual    VARCHAR(255),
+    dep_time_ts   BIGINT,
+    arr_iata      VARCHAR(255),
+    arr_terminal  VARCHAR(255),
+    arr_gate      VARCHAR(255),
+    arr_time      VARCHAR(255),
+    arr_actual    VARCHAR(255),
+    arr_time_ts   BIGINT,
+    status        VARCHAR(255),
+    duration      INTEGER,
+    delayed       INTEGER
+);
+
+-- Cột epoch được thêm sau bảng gốc
+ALTER TABLE airline_schedule ADD COLUMN IF NOT EXISTS dep_time_ts BIGINT;
+ALTER TABLE airline_schedule ADD COLUMN IF NOT EXISTS arr_time_ts BIGINT;
+
+CREATE INDEX IF NOT EXISTS idx_dep_iata ON airline_schedule (dep_iata);
+CREATE INDEX IF NOT EXISTS idx_arr_iata ON airline_schedule (arr_iata);
+
+DO $$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = 'unique_departure') THEN
+        ALTER TABLE airline_schedule ADD CONSTRAINT unique_departure UNIQUE (flight_iata, dep_time);
+    END IF;
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = 'unique_arrival') THEN
+        ALTER TABLE airline_schedule ADD CONSTRAINT unique_arrival UNIQUE (flight_iata, arr_time);
+    END IF;
+END
+$$;
+
+CREATE TABLE IF NOT EXISTS recipes (
+    recipe_id  BIGINT PRIMARY KEY,
+    title      VARCHAR(255) NOT NULL,
+    image      VARCHAR(500),
+    image_type VARCHAR(255)
+);
@@ -0,0 +1,2 @@
+-- Route query (from → to, theo giờ khởi hành)
+CREATE INDEX IF NOT EXISTS idx_route ON airline_schedule (dep_iata, arr_iata, dep_time);
@@ -0,0 +1,61 @@
+-- Rollup on-time performance theo airline / sân bay / giờ (giờ địa phương theo lịch bay).
+-- Cập nhật tăng dần từ syncFlights (DelayRollupService), không quét lại airline_schedule.
+-- direction: D = tính theo sân bay/giờ đi, A = theo sân bay/giờ đến.
+-- delay_histogram: số chuyến (không hủy) theo khoảng trễ (phút)
+--   [<=0, 1-5, 6-15, 16-30, 31-60, 61-120, 121-240, >240]
+
+CREATE TABLE IF NOT EXISTS delay_rollup (
+    airline_iata    VARCHAR(16)  NOT NULL,
+    airport_iata    VARCHAR(16)  NOT NULL,
+    direction       CHAR(1)      NOT NULL,
+    hour_local      TIMESTAMP    NOT NULL,
+    flights         INTEGER      NOT NULL DEFAULT 0,
+    delayed_flights INTEGER      NOT NULL DEFAULT 0,
+    delay_minutes   BIGINT       NOT NULL DEFAULT 0,
+    cancelled       INTEGER      NOT NULL DEFAULT 0,
+    delay_histogram INTEGER[]    NOT NULL,
+    PRIMARY KEY (airline_iata, airport_iata, direction, hour_local)
+);
+
+CREATE INDEX IF NOT EXISTS idx_delay_rollup_airport ON delay_rollup (airport_iata, direction, hour_local);
+CREATE INDEX IF NOT EXISTS idx_delay_rollup_airline ON delay_rollup (airline_iata, direction, hour_local);
+
+-- Cộng hai histogram theo từng phần tử (dùng trong upsert)
+CREATE OR REPLACE FUNCTION delay_histogram_add(a INTEGER[], b INTEGER[]) RETURNS INTEGER[] AS $$
+    SELECT array_agg(COALESCE(x, 0) + COALESCE(y, 0) ORDER BY i)
+    FROM unnest(a, b) WITH ORDINALITY AS t(x, y, i)
+$$ LANGUAGE sql IMMUTABLE;
+
+-- Backfill một lần từ dữ liệu hiện có, cùng quy tắc với DelayRollupService.Delta.add
+INSERT INTO delay_rollup (airline_iata, airport_iata, direction, hour_local,
+                          flights, delayed_flights, delay_minutes, cancelled, delay_histogram)
+SELECT airline_iata, airport_iata, direction, hour_local,
+       count(*),
+       count(*) FILTER (WHERE NOT c AND d > 0),
+       COALESCE(sum(d) FILTER (WHERE NOT c), 0),
+       count(*) FILTER (WHERE c),
+       ARRAY[
+           count(*) FILTER (WHERE NOT c AND d <= 0),
+           count(*) FILTER (WHERE NOT c AND d BETWEEN 1 AND 5),
+           count(*) FILTER (WHERE NOT c AND d BETWEEN 6 AND 15),
+           count(*) FILTER (WHERE NOT c AND d BETWEEN 16 AND 30),
+           count(*) FILTER (WHERE NOT c AND d BETWEEN 31 AND 60),
+           count(*) FILTER (WHERE NOT c AND d BETWEEN 61 AND 120),
+           count(*) FILTER (WHERE NOT c AND d BETWEEN 121 AND 240),
+           count(*) FILTER (WHERE NOT c AND d > 240)
+       ]::INTEGER[]
+FROM (
+    SELECT airline_iata, dep_iata AS airport_iata, 'D' AS direction,
+           CAST(substring(dep_time FROM 1 FOR 13) || ':00' AS TIMESTAMP) AS hour_local,
+           lower(COALESCE(status, '')) = 'cancelled' AS c, GREATEST(COALESCE(delayed, 0), 0) AS d
+    FROM airline_schedule
+    WHERE airline_iata IS NOT NULL AND dep_iata IS NOT NULL AND dep_time ~ '^\d{4}-\d{2}-\d{2} \d{2}'
+    UNION ALL
+    SELECT airline_iata, arr_iata, 'A',
+           CAST(substring(arr_time FROM 1 FOR 13) || ':00' AS TIMESTAMP),
+           lower(COALESCE(status, '')) = 'cancelled', GREATEST(COALESCE(delayed, 0), 0)
+    FROM airline_schedule
+    WHERE airline_iata IS NOT NULL AND arr_iata IS NOT NULL AND arr_time ~ '^\d{4}-\d{2}-\d{2} \d{2}'
+) s
+GROUP BY airline_iata, airport_iata, direction, hour_local
+ON CONFLICT DO NOTHING;
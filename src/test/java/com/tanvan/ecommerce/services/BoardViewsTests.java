@@ -0,0 +1,49 @@
+package com.tanvan.ecommerce.services;
+
+import com.tanvan.ecommerce.dto.FlightView;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * "Next flights" window over a board mixing rows with and without epoch timestamps
+ */
+class BoardViewsTests {
+
+    // 2026-01-01 08:00 tại sân bay UTC+2
+    private static final long NOW = 1_767_247_200L;
+
+    @Test
+    void nextSkipsPastLegacyRowsWithoutTimestamp() {
+        List<FlightView> sorted = BoardViews.materialize(List.of(
+                departure("VN1", "2026-01-01 06:00", 1_767_240_000L),
+                departure("VN2", "2026-01-01 07:00", null),
+                departure("VN3", "2026-01-01 09:00", 1_767_250_800L),
+                departure("VN4", "2026-01-01 10:00", null),
+                departure("VN5", null, null)
+        ), List.of()).get(BoardViews.DEPARTURES);
+
+        assertEquals(List.of("VN3", "VN4", "VN5"), flightIatas(BoardViews.nextFrom(sorted, true, NOW)));
+    }
+
+    @Test
+    void nextKeepsWholeListWhenNoRowHasTimestamp() {
+        List<FlightView> sorted = BoardViews.materialize(List.of(
+                departure("VN1", "2026-01-01 06:00", null),
+                departure("VN2", "2026-01-01 09:00", null)
+        ), List.of()).get(BoardViews.DEPARTURES);
+
+        assertEquals(List.of("VN1", "VN2"), flightIatas(BoardViews.nextFrom(sorted, true, NOW)));
+    }
+
+    private static FlightView departure(String flightIata, String depTime, Long depTimeTs) {
+        return new FlightView(null, null, flightIata, "VN", "SGN", null, null, depTime, null, depTimeTs,
+                "HAN", null, null, null, null, null, "scheduled", null, null);
+    }
+
+    private static List<String> flightIatas(List<FlightView> flights) {
+        return flights.stream().map(FlightView::flightIata).toList();
+    }
+}
@@ -0,0 +1,194 @@
+package com.tanvan.ecommerce.services;
+
+import com.tanvan.ecommerce.dto.FlightView;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Round trip of the compact L1 representation + row/code sharing for 500 airports;
+ * the retained heap comparison runs only in the benchmark profile.
+ */
+class CompactFlightTableTests {
+
+    private static final int AIRPORTS = 500;
+    private static final int FLIGHTS_PER_DIRECTION = 150;
+
+    @Test
+    void roundTripKeepsEveryField() {
+        Map<String, List<FlightView>> board = syntheticBoard("SGN", new Random(7));
+        List<FlightView> departures = new ArrayList<>(board.get(BoardViews.DEPARTURES));
+        departures.add(new FlightView(null, null, null, null, null, null, null,
+                "2026-01-01T08:15:00", null, 1_767_255_307L, null, null, null,
+                null, null, null, null, null, null));
+        board = BoardViews.materialize(departures, board.get(BoardViews.ARRIVALS));
+
+        CompactFlightTable table = CompactFlightTable.encode(board, new CodeDictionary());
+        Map<String, List<FlightView>> decoded = table.lists();
+
+        assertEquals(board.keySet(), decoded.keySet());
+        board.forEach((name, flights) -> assertEquals(flights, new ArrayList<>(decoded.get(name)), name));
+        // Các bucket delayed/cancelled dùng chung row với danh sách gốc
+        assertEquals(board.get(BoardViews.DEPARTURES).size() + board.get(BoardViews.ARRIVALS).size(), table.rows());
+    }
+
+    @Test
+    void corruptBinaryFormIsRejected() throws IOException {
+        CodeDictionary dictionary = new CodeDictionary();
+        CompactFlightTable table = CompactFlightTable.encode(syntheticBoard("SGN", new Random(7)), dictionary);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        table.writeTo(new DataOutputStream(bytes));
+        byte[] written = bytes.toByteArray();
+
+        assertEquals(table.rows(), CompactFlightTable.readFrom(ByteBuffer.wrap(written), dictionary).rows());
+        // Cắt cụt → length của list cuối vượt quá phần còn lại
+        assertThrows(RuntimeException.class, () -> CompactFlightTable.readFrom(
+                ByteBuffer.wrap(Arrays.copyOf(written, written.length - 7)), dictionary));
+        // Dictionary không khớp → id ngoài phạm vi
+        assertThrows(IllegalArgumentException.class, () -> CompactFlightTable.readFrom(
+                ByteBuffer.wrap(written), new CodeDictionary()));
+        assertThrows(IllegalArgumentException.class, () -> CompactFlightTable.readString(
+                ByteBuffer.allocate(8).putInt(0, Integer.MAX_VALUE)));
+    }
+
+    @Test
+    void tableMovesToAnotherDictionaryWithoutChangingRows() throws IOException {
+        Map<String, List<FlightView>> board = syntheticBoard("SGN", new Random(7));
+        CompactFlightTable table = CompactFlightTable.encode(board, new CodeDictionary());
+        CodeDictionary rotated = new CodeDictionary();
+        rotated.intern("HAN"); // id khác với dictionary cũ
+        CompactFlightTable moved = table.withDictionary(rotated);
+
+        board.forEach((name, flights) -> assertEquals(flights, new ArrayList<>(moved.lists().get(name)), name));
+        // Snapshot đọc lại với dictionary mới
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        moved.writeTo(new DataOutputStream(bytes));
+        CompactFlightTable read = CompactFlightTable.readFrom(ByteBuffer.wrap(bytes.toByteArray()), rotated);
+        board.forEach((name, flights) -> assertEquals(flights, new ArrayList<>(read.lists().get(name)), name));
+    }
+
+    /**
+     * Deterministic sizes instead of a heap measurement: rows shared by the views,
+     * codes shared by every airport through one dictionary
+     */
+    @Test
+    void compactTablesShareRowsAndCodesFor500Airports() {
+        Random random = new Random(42);
+        CodeDictionary dictionary = new CodeDictionary();
+        int listEntries = 0;
+        int distinctFlights = 0;
+        int rows = 0;
+        int stringFields = 0;
+        for (int i = 0; i < AIRPORTS; i++) {
+            Map<String, List<FlightView>> board = syntheticBoard(airportCode(i), random);
+            CompactFlightTable table = CompactFlightTable.encode(board, dictionary);
+
+            for (List<FlightView> flights : board.values()) listEntries += flights.size();
+            Set<FlightView> distinct = new HashSet<>(board.get(BoardViews.DEPARTURES));
+            distinct.addAll(board.get(BoardViews.ARRIVALS));
+            distinctFlights += distinct.size();
+            rows += table.rows();
+            // flight number, flight/airline IATA, 2 airports, 2 terminals, dep gate, status
+            stringFields += 9 * table.rows();
+        }
+        // Mỗi flight một row dù nằm trong nhiều view (danh sách gốc + bucket)
+        assertEquals(distinctFlights, rows);
+        assertTrue(rows < listEntries);
+        // Mã lặp lại (hãng, sân bay, status, gate...) chỉ lưu một lần
+        assertTrue(dictionary.size() < stringFields / 5,
+                dictionary.size() + " dictionary entries for " + stringFields + " string fields");
+    }
+
+    /**
+     * Retained heap of 500 boards as FlightView lists vs compact tables (used heap after GC),
+     * machine/JVM dependent → only with mvn -Pbenchmark test
+     */
+    @Test
+    @Tag("benchmark")
+    void retainedHeapFor500Airports() {
+        Random random = new Random(42);
+        long baseline = usedHeapAfterGc();
+        List<Map<String, List<FlightView>>> boards = new ArrayList<>(AIRPORTS);
+        for (int i = 0; i < AIRPORTS; i++) {
+            boards.add(syntheticBoard(airportCode(i), random));
+        }
+        long viewsBytes = usedHeapAfterGc() - baseline;
+
+        CodeDictionary dictionary = new CodeDictionary();
+        List<CompactFlightTable> tables = new ArrayList<>(AIRPORTS);
+        for (Map<String, List<FlightView>> board : boards) {
+            tables.add(CompactFlightTable.encode(board, dictionary));
+        }
+        // Hiệu hai lần đo = bảng compact + dictionary dùng chung
+        long compactBytes = usedHeapAfterGc() - baseline - viewsBytes;
+        Reference.reachabilityFence(boards);
+        Reference.reachabilityFence(tables);
+
+        System.out.printf("FlightView lists %,12d bytes%nCompact tables   %,12d bytes (%.1f%%, dictionary %,d entries)%n",
+                viewsBytes, compactBytes, 100.0 * compactBytes / viewsBytes, dictionary.size());
+        assertTrue(compactBytes * 2 < viewsBytes, compactBytes + " vs " + viewsBytes);
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static Map<String, List<FlightView>> syntheticBoard(String hub, Random random) {
+        return BoardViews.materialize(syntheticFlights(hub, true, random), syntheticFlights(hub, false, random));
+    }
+
+    /**
+     * new String(...) mô phỏng dữ liệu vừa deserialize từ Redis (mỗi row có String riêng)
+     */
+    private static List<FlightView> syntheticFlights(String hub, boolean departure, Random random) {
+        String[] airlines = {"VN", "VJ", "QH", "SQ", "CX", "TG", "KE", "JL", "NH", "EK", "QR", "MH"};
+        String[] statuses = {"scheduled", "scheduled", "active", "landed", "delayed", "cancelled"};
+        long dayStart = 1_767_225_600L;
+
+        List<FlightView> flights = new ArrayList<>(FLIGHTS_PER_DIRECTION);
+        for (int i = 0; i < FLIGHTS_PER_DIRECTION; i++) {
+            String airline = airlines[random.nextInt(airlines.length)];
+            String number = String.valueOf(100 + random.nextInt(9000));
+            String other = airportCode(random.nextInt(AIRPORTS));
+            int minute = random.nextInt(24 * 60);
+            int duration = 60 + random.nextInt(600);
+            Integer delayed = random.nextInt(4) == 0 ? random.nextInt(120) : null;
+            long depTs = dayStart + minute * 60L;
+
+            flights.add(new FlightView(
+                    hub + (departure ? "-D" : "-A") + i, new String(number), airline + number, new String(airline),
+                    new String(departure ? hub : other), String.valueOf(1 + random.nextInt(2)),
+                    String.valueOf(random.nextInt(40)),
+                    localTime(minute), delayed != null ? localTime(minute + delayed) : null, depTs,
+                    new String(departure ? other : hub), String.valueOf(1 + random.nextInt(2)), null,
+                    localTime(minute + duration), null, depTs + duration * 60L,
+                    new String(statuses[random.nextInt(statuses.length)]), duration, delayed));
+        }
+        return flights;
+    }
+
+    private static String airportCode(int i) {
+        return "" + (char) ('A' + i / 676 % 26) + (char) ('A' + i / 26 % 26) + (char) ('A' + i % 26);
+    }
+
+    private static String localTime(int minute) {
+        int m = minute % (24 * 60);
+        return String.format("2026-01-0%d %02d:%02d", 1 + minute / (24 * 60), m / 60, m % 60);
+    }
+}
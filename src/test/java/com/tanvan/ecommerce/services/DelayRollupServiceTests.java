@@ -0,0 +1,52 @@
+package com.tanvan.ecommerce.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Histogram buckets and percentile interpolation of the delay rollups
+ */
+class DelayRollupServiceTests {
+
+    @Test
+    void bucketOfUsesInclusiveUpperBounds() {
+        assertEquals(0, DelayRollupService.bucketOf(-10)); // sớm giờ tính như đúng giờ
+        assertEquals(0, DelayRollupService.bucketOf(0));
+        assertEquals(1, DelayRollupService.bucketOf(1));
+        assertEquals(1, DelayRollupService.bucketOf(5));
+        assertEquals(2, DelayRollupService.bucketOf(6));
+        assertEquals(6, DelayRollupService.bucketOf(240));
+        assertEquals(7, DelayRollupService.bucketOf(241));
+        assertEquals(DelayRollupService.BUCKET_UPPER.length - 1, DelayRollupService.bucketOf(Integer.MAX_VALUE));
+    }
+
+    @Test
+    void percentileOfEmptyHistogramIsZero() {
+        assertEquals(0, DelayRollupService.percentile(new int[DelayRollupService.BUCKET_UPPER.length], 0.5));
+    }
+
+    @Test
+    void percentileInterpolatesInsideTheBucket() {
+        int[] histogram = new int[DelayRollupService.BUCKET_UPPER.length];
+        histogram[2] = 10; // (5, 15]
+        assertEquals(10, DelayRollupService.percentile(histogram, 0.5));
+        assertEquals(15, DelayRollupService.percentile(histogram, 1.0));
+    }
+
+    @Test
+    void percentileWalksAcrossBuckets() {
+        int[] histogram = new int[DelayRollupService.BUCKET_UPPER.length];
+        histogram[0] = 5; // đúng giờ
+        histogram[3] = 5; // (15, 30]
+        assertEquals(0, DelayRollupService.percentile(histogram, 0.5));
+        assertEquals(27, DelayRollupService.percentile(histogram, 0.9));
+    }
+
+    @Test
+    void percentileInOpenLastBucketIsItsLowerBound() {
+        int[] histogram = new int[DelayRollupService.BUCKET_UPPER.length];
+        histogram[DelayRollupService.BUCKET_UPPER.length - 1] = 3;
+        assertEquals(241, DelayRollupService.percentile(histogram, 0.95));
+    }
+}
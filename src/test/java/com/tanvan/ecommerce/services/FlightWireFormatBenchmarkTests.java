@@ -0,0 +1,119 @@
+package com.tanvan.ecommerce.services;
+
+import com.tanvan.ecommerce.dto.FlightView;
+import com.tanvan.ecommerce.services.FlightResponseRenderer.WireFormat;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Size comparison of the wire formats on a hub-sized board (~1500 departures + 1500 arrivals,
+ * roughly a busy day at a large hub); encode timings run only in the benchmark profile.
+ */
+class FlightWireFormatBenchmarkTests {
+
+    private static final int FLIGHTS_PER_DIRECTION = 1500;
+    private static final int WARMUP_ROUNDS = 50;
+    private static final int MEASURED_ROUNDS = 200;
+
+    private final FlightResponseRenderer renderer = new FlightResponseRenderer(0);
+
+    @Test
+    void compactFormatsAreSmallerForHubSizedBoard() {
+        Map<String, List<FlightView>> board = hubBoard();
+        Map<WireFormat, Integer> sizes = new EnumMap<>(WireFormat.class);
+        for (WireFormat format : WireFormat.values()) {
+            sizes.put(format, renderer.render(board, null, null, format).length);
+        }
+
+        assertTrue(sizes.get(WireFormat.CBOR) < sizes.get(WireFormat.JSON));
+        assertTrue(sizes.get(WireFormat.COLUMNAR_CBOR) < sizes.get(WireFormat.CBOR));
+        assertTrue(sizes.get(WireFormat.COLUMNAR_JSON) < sizes.get(WireFormat.JSON));
+    }
+
+    /**
+     * Encode time per format, machine dependent → only with mvn -Pbenchmark test
+     */
+    @Test
+    @Tag("benchmark")
+    void encodeTimeForHubSizedBoard() {
+        Map<String, List<FlightView>> board = hubBoard();
+        for (WireFormat format : WireFormat.values()) {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                renderer.render(board, null, null, format);
+            }
+            long start = System.nanoTime();
+            int size = 0;
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                size = renderer.render(board, null, null, format).length;
+            }
+            double micros = (System.nanoTime() - start) / 1_000.0 / MEASURED_ROUNDS;
+            System.out.printf("%-14s %,9d bytes  %,10.1f µs/encode%n", format, size, micros);
+        }
+    }
+
+    @Test
+    void acceptHeaderSelectsFormat() {
+        assertEquals(WireFormat.JSON, WireFormat.fromAccept(null));
+        assertEquals(WireFormat.JSON, WireFormat.fromAccept("*/*"));
+        assertEquals(WireFormat.CBOR, WireFormat.fromAccept("application/cbor"));
+        assertEquals(WireFormat.COLUMNAR_CBOR,
+                WireFormat.fromAccept("application/vnd.flightschedule.columnar+cbor, application/json;q=0.5"));
+    }
+
+    @Test
+    void acceptHeaderHonoursQualityValues() {
+        assertEquals(WireFormat.CBOR, WireFormat.fromAccept("application/json;q=0.5, application/cbor"));
+        assertEquals(WireFormat.COLUMNAR_JSON, WireFormat.fromAccept(
+                "application/cbor;q=0.2, application/vnd.flightschedule.columnar+json;q=0.9"));
+        assertEquals(WireFormat.JSON, WireFormat.fromAccept("application/cbor;q=0, */*"));
+    }
+
+    private static Map<String, List<FlightView>> hubBoard() {
+        Map<String, List<FlightView>> board = new LinkedHashMap<>();
+        board.put("departures", syntheticFlights("SGN", true));
+        board.put("arrivals", syntheticFlights("SGN", false));
+        return board;
+    }
+
+    private static List<FlightView> syntheticFlights(String hub, boolean departure) {
+        String[] airlines = {"VN", "VJ", "QH", "SQ", "CX", "TG", "KE", "JL", "NH", "EK", "QR", "MH"};
+        String[] airports = {"HAN", "DAD", "CXR", "PQC", "SIN", "BKK", "HKG", "ICN", "NRT", "DXB", "DOH", "KUL",
+                "TPE", "PVG", "MNL", "CGK", "SYD", "MEL", "CDG", "FRA", "LHR"};
+        String[] statuses = {"scheduled", "scheduled", "scheduled", "active", "landed", "cancelled"};
+        Random random = new Random(42);
+        long dayStart = 1_767_225_600L; // 2026-01-01T00:00:00Z
+
+        List<FlightView> flights = new ArrayList<>(FLIGHTS_PER_DIRECTION);
+        for (int i = 0; i < FLIGHTS_PER_DIRECTION; i++) {
+            String airline = airlines[random.nextInt(airlines.length)];
+            String number = String.valueOf(100 + random.nextInt(9000));
+            String other = airports[random.nextInt(airports.length)];
+            int minute = random.nextInt(24 * 60);
+            int duration = 60 + random.nextInt(600);
+            Integer delayed = random.nextInt(4) == 0 ? random.nextInt(120) : null;
+            String depTime = localTime(minute);
+            String arrTime = localTime((minute + duration) % (24 * 60));
+            long depTs = dayStart + minute * 60L;
+
+            flights.add(new FlightView(
+                    new UUID(random.nextLong(), random.nextLong()).toString(), number, airline + number, airline,
+                    departure ? hub : other, departure ? String.valueOf(1 + random.nextInt(2)) : null,
+                    departure ? String.valueOf(random.nextInt(40)) : null,
+                    depTime, delayed != null ? depTime : null, depTs,
+                    departure ? other : hub, departure ? null : String.valueOf(1 + random.nextInt(2)),
+                    departure ? null : String.valueOf(random.nextInt(40)),
+                    arrTime, null, depTs + duration * 60L,
+                    statuses[random.nextInt(statuses.length)], duration, delayed));
+        }
+        return flights;
+    }
+
+    private static String localTime(int minuteOfDay) {
+        return String.format("2026-01-01 %02d:%02d", minuteOfDay / 60, minuteOfDay % 60);
+    }
+}
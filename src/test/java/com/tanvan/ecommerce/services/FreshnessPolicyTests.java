@@ -0,0 +1,102 @@
+package com.tanvan.ecommerce.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Freshness windows and refresh decisions, with the property defaults and no jitter
+ * unless a test turns it on.
+ */
+class FreshnessPolicyTests {
+
+    private FreshnessPolicy policy;
+
+    @BeforeEach
+    void setUp() {
+        policy = new FreshnessPolicy();
+        ReflectionTestUtils.setField(policy, "defaultStaleSeconds", 30);
+        ReflectionTestUtils.setField(policy, "minStaleSeconds", 15);
+        ReflectionTestUtils.setField(policy, "maxStaleSeconds", 600);
+        ReflectionTestUtils.setField(policy, "ttlRatio", 4);
+        ReflectionTestUtils.setField(policy, "jitter", 0.0);
+        ReflectionTestUtils.setField(policy, "xfetchBeta", 1.0);
+    }
+
+    @Test
+    void unknownAirportGetsDefaultWindow() {
+        assertEquals(new FreshnessPolicy.Freshness(30, 120), policy.freshnessFor("SGN"));
+    }
+
+    @Test
+    void busyAirportIsClampedToMinimum() {
+        // Sync đầu chỉ ghi mốc thời gian, sync sau mới tính tốc độ thay đổi
+        policy.recordSync("sgn", 0);
+        policy.recordSync("sgn", 100);
+
+        assertEquals(new FreshnessPolicy.Freshness(15, 60), policy.freshnessFor("SGN"));
+    }
+
+    @Test
+    void quietAirportGrowsToMaximum() {
+        policy.recordSync("VII", 0);
+        policy.recordSync("VII", 0);
+
+        assertEquals(new FreshnessPolicy.Freshness(600, 2400), policy.freshnessFor("vii"));
+    }
+
+    @Test
+    void popularAirportGetsShorterWindow() {
+        policy.recordSync("HAN", 0);
+        policy.recordSync("HAN", 0);
+        policy.recordSync("DAD", 0);
+        policy.recordSync("DAD", 0);
+        for (int i = 0; i < 50; i++) {
+            policy.recordRequest("HAN");
+        }
+
+        int popular = policy.freshnessFor("HAN").staleSeconds();
+        assertTrue(popular < 600 && popular >= 15, "stale " + popular);
+        assertEquals(600, policy.freshnessFor("DAD").staleSeconds());
+    }
+
+    @Test
+    void jitterStaysWithinConfiguredFraction() {
+        ReflectionTestUtils.setField(policy, "jitter", 0.1);
+        for (int i = 0; i < 1000; i++) {
+            FreshnessPolicy.Freshness freshness = policy.freshnessFor("SGN");
+            assertTrue(freshness.staleSeconds() >= 27 && freshness.staleSeconds() <= 33,
+                    "stale " + freshness.staleSeconds());
+            assertEquals(freshness.staleSeconds() * 4, freshness.ttlSeconds());
+        }
+    }
+
+    @Test
+    void refreshesEarlyOnlyNearDeadline() {
+        long now = System.currentTimeMillis();
+        // Chưa đo được thời gian refresh → không refresh sớm
+        assertFalse(policy.shouldRefreshEarly(now - 60_000, 30, 0));
+        // Đã quá hạn stale → luôn refresh
+        assertTrue(policy.shouldRefreshEarly(now - 60_000, 30, 100));
+        // Còn 10 phút, refresh mất 1ms → gần như không bao giờ
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(policy.shouldRefreshEarly(now, 600, 1));
+        }
+    }
+
+    @Test
+    void priorityGrowsWithPopularityAndStaleness() {
+        assertEquals(2.0, policy.refreshPriority("CXR", 2.0));
+        assertEquals(0.0, policy.refreshPriority("CXR", -1.0));
+
+        for (int i = 0; i < 50; i++) {
+            policy.recordRequest("SGN");
+        }
+        assertTrue(policy.refreshPriority("SGN", 1.0) > policy.refreshPriority("CXR", 1.0));
+        assertTrue(policy.refreshPriority("SGN", 2.0) > policy.refreshPriority("SGN", 1.0));
+    }
+}
@@ -0,0 +1,111 @@
+package com.tanvan.ecommerce.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Queue semantics of the background refresh scheduler. Tasks are queued before the single
+ * worker starts, so the run order is deterministic.
+ */
+class RefreshSchedulerTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final RefreshScheduler scheduler = new RefreshScheduler(registry);
+    private final List<String> ran = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void stop() {
+        scheduler.stop();
+    }
+
+    @Test
+    void runsHighestPriorityFirst() throws InterruptedException {
+        CountDownLatch done = configure(10, 3);
+        scheduler.submit("sgn", 1, record("SGN", done));
+        scheduler.submit("han", 3, record("HAN", done));
+        scheduler.submit("dad", 2, record("DAD", done));
+
+        scheduler.start();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("HAN", "DAD", "SGN"), ran);
+    }
+
+    @Test
+    void deduplicatesPerAirportAndKeepsHigherPriority() throws InterruptedException {
+        CountDownLatch done = configure(10, 2);
+        assertTrue(scheduler.submit("SGN", 1, record("SGN", done)));
+        assertTrue(scheduler.submit("HAN", 2, record("HAN", done)));
+        assertTrue(scheduler.submit("sgn", 5, record("SGN-again", done)));
+        assertEquals(2, scheduler.pendingCount());
+        assertEquals(1.0, registry.counter("flights.refresh.deduplicated").count());
+
+        scheduler.start();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        // Task đầu tiên được giữ, chỉ priority được nâng
+        assertEquals(List.of("SGN", "HAN"), ran);
+    }
+
+    @Test
+    void shedsLowestPriorityWhenFull() throws InterruptedException {
+        CountDownLatch done = configure(2, 2);
+        assertTrue(scheduler.submit("SGN", 1, record("SGN", done)));
+        assertTrue(scheduler.submit("HAN", 2, record("HAN", done)));
+
+        // Task mới thấp nhất → chính nó bị bỏ
+        assertFalse(scheduler.submit("DAD", 0.5, record("DAD", done)));
+        // Task mới cao hơn → bỏ task thấp nhất trong hàng đợi
+        assertTrue(scheduler.submit("CXR", 3, record("CXR", done)));
+        assertEquals(2, scheduler.pendingCount());
+        assertEquals(2.0, registry.counter("flights.refresh.shed").count());
+
+        scheduler.start();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("CXR", "HAN"), ran);
+    }
+
+    @Test
+    void dropsRequestForAirportBeingRefreshed() throws InterruptedException {
+        configure(10, 0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.start();
+        scheduler.submit("SGN", 1, () -> {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertFalse(scheduler.submit("sgn", 10, () -> ran.add("SGN")));
+        assertEquals(0, scheduler.pendingCount());
+        release.countDown();
+    }
+
+    private CountDownLatch configure(int maxPending, int expectedRuns) {
+        ReflectionTestUtils.setField(scheduler, "workerCount", 1);
+        ReflectionTestUtils.setField(scheduler, "maxPending", maxPending);
+        return new CountDownLatch(expectedRuns);
+    }
+
+    private Runnable record(String name, CountDownLatch done) {
+        return () -> {
+            ran.add(name);
+            done.countDown();
+        };
+    }
+}
@@ -0,0 +1,80 @@
+package com.tanvan.ecommerce.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * AIMD limit changes on synthetic latency samples (tolerance 2, backoff 0.5)
+ */
+class AdaptiveConcurrencyLimiterTests {
+
+    private static AdaptiveConcurrencyLimiter limiter(int initial, int max, int minRttWindow) {
+        return new AdaptiveConcurrencyLimiter("test", initial, 1, max, 2.0, 0.5, minRttWindow);
+    }
+
+    @Test
+    void growsByOneWhileFastAndUsedUpToMax() {
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 6, 100);
+        limiter.onSample(1_000, 4, false);
+        assertEquals(5, limiter.getLimit());
+        limiter.onSample(1_000, 5, false);
+        assertEquals(6, limiter.getLimit());
+        limiter.onSample(1_000, 6, false);
+        assertEquals(6, limiter.getLimit());
+    }
+
+    @Test
+    void doesNotGrowWhenLimitIsMostlyUnused() {
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 10, 100);
+        limiter.onSample(1_000, 1, false);
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void backsOffOnSlowOrDroppedCallsDownToMin() {
+        AdaptiveConcurrencyLimiter limiter = limiter(8, 10, 100);
+        limiter.onSample(1_000, 8, false);   // min RTT 1000 → 9
+        limiter.onSample(5_000, 1, false);   // > 2 × min RTT → 4.5
+        assertEquals(4, limiter.getLimit());
+        limiter.onSample(1_000, 1, true);    // dropped dù nhanh → 2.25
+        assertEquals(2, limiter.getLimit());
+        limiter.onSample(1_000, 1, true);
+        limiter.onSample(1_000, 1, true);
+        assertEquals(1, limiter.getLimit());
+    }
+
+    @Test
+    void relearnsMinRttAfterEachWindow() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 20, 3);
+        limiter.onSample(1_000, 10, false);  // min RTT 1000 → 11
+        limiter.onSample(3_000, 11, false);  // chậm → 5.5
+        limiter.onSample(3_000, 5, false);   // hết window, min RTT vẫn 1000 → 2.75
+        limiter.onSample(3_000, 2, false);   // → 1.375
+        limiter.onSample(3_000, 1, false);   // → 1
+        assertEquals(1, limiter.getLimit());
+
+        // Window mới chỉ toàn 3000 → đó là latency bình thường mới, limit tăng lại
+        limiter.onSample(3_000, 1, false);
+        assertEquals(2, limiter.getLimit());
+        limiter.onSample(3_000, 2, false);
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    void rejectsAtLimitAndIgnoreFreesSlotWithoutSample() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 10, 100);
+        AdaptiveConcurrencyLimiter.Permit first = limiter.tryAcquire();
+        assertNotNull(first);
+        assertNotNull(limiter.tryAcquire());
+        assertNull(limiter.tryAcquire());
+
+        first.ignore();
+        first.dropped(); // đã release, không có tác dụng
+        assertEquals(1, limiter.getInflight());
+        assertEquals(2, limiter.getLimit());
+        assertNotNull(limiter.tryAcquire());
+    }
+}
@@ -0,0 +1,87 @@
+package com.tanvan.ecommerce.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ownership guarantees of the cluster ring, with the default 128 virtual nodes.
+ */
+class ConsistentHashRingTests {
+
+    private static final int VIRTUAL_NODES = 128;
+    private static final int KEYS = 10_000;
+    private static final List<String> THREE = List.of("10.0.0.1:8080", "10.0.0.2:8080", "10.0.0.3:8080");
+
+    @Test
+    void emptyRingHasNoOwner() {
+        ConsistentHashRing ring = new ConsistentHashRing(Set.of(), VIRTUAL_NODES);
+        assertTrue(ring.isEmpty());
+        assertNull(ring.ownerOf("FLIGHTS:SGN"));
+    }
+
+    @Test
+    void ownerIsIndependentOfMemberOrder() {
+        // Mỗi instance thấy danh sách member theo thứ tự khác nhau
+        ConsistentHashRing a = new ConsistentHashRing(THREE, VIRTUAL_NODES);
+        ConsistentHashRing b = new ConsistentHashRing(List.of(THREE.get(2), THREE.get(0), THREE.get(1)), VIRTUAL_NODES);
+        for (int i = 0; i < KEYS; i++) {
+            String key = "FLIGHTS:" + i;
+            assertEquals(a.ownerOf(key), b.ownerOf(key));
+            assertTrue(THREE.contains(a.ownerOf(key)));
+        }
+    }
+
+    @Test
+    void keysAreSpreadAcrossMembers() {
+        ConsistentHashRing ring = new ConsistentHashRing(THREE, VIRTUAL_NODES);
+        Map<String, Integer> owned = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            owned.merge(ring.ownerOf("FLIGHTS:" + i), 1, Integer::sum);
+        }
+        assertEquals(3, owned.size());
+        // Lý tưởng 1/3 mỗi member, cho phép lệch ±25%
+        owned.forEach((member, count) ->
+                assertTrue(count > KEYS / 4 && count < KEYS * 5 / 12, member + " owns " + count));
+    }
+
+    @Test
+    void addingMemberMovesAboutOneNthOnlyToIt() {
+        String added = "10.0.0.4:8080";
+        ConsistentHashRing before = new ConsistentHashRing(THREE, VIRTUAL_NODES);
+        ConsistentHashRing after = new ConsistentHashRing(
+                List.of(THREE.get(0), THREE.get(1), THREE.get(2), added), VIRTUAL_NODES);
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "FLIGHTS:" + i;
+            String owner = after.ownerOf(key);
+            if (!owner.equals(before.ownerOf(key))) {
+                assertEquals(added, owner, key);
+                moved++;
+            }
+        }
+        // ~1/4 số key chuyển sang member mới
+        assertTrue(moved > KEYS * 15 / 100 && moved < KEYS * 35 / 100, "moved " + moved);
+    }
+
+    @Test
+    void removingMemberOnlyMovesItsKeys() {
+        ConsistentHashRing before = new ConsistentHashRing(THREE, VIRTUAL_NODES);
+        ConsistentHashRing after = new ConsistentHashRing(THREE.subList(0, 2), VIRTUAL_NODES);
+        for (int i = 0; i < KEYS; i++) {
+            String key = "FLIGHTS:" + i;
+            String owner = before.ownerOf(key);
+            if (!owner.equals(THREE.get(2))) {
+                assertEquals(owner, after.ownerOf(key), key);
+            }
+        }
+    }
+}